@@ -26,12 +26,16 @@ public class MVConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        "/voucher-order/seckill/*/ticket/*"
 
                 ).order(1);
 
         //token刷新拦截器，第一层拦截器，拦截所有请求。order()控制拦截顺序，括号中值越小越靠前执行
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
+        //排队号码的状态查询轮询频繁，不刷新token
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+                .excludePathPatterns("/voucher-order/seckill/*/ticket/*")
+                .order(0);
 
 
     }
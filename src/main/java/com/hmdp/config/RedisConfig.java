@@ -0,0 +1,101 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillVoucherCache;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_NAMESPACE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 缓存值按原始字节读写，具体格式由CacheCodec决定
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> byteRedisTemplate(RedisConnectionFactory connectionFactory){
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * 缓存编解码器：json兼容旧数据；binary更省CPU和内存，并且能读取json数据，
+     * 所有节点都升级到支持binary的版本后再切换
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:json}") String codec){
+        return "binary".equalsIgnoreCase(codec) ? new BinaryCacheCodec() : new JsonCacheCodec();
+    }
+
+    /**
+     * 缓存异步查询使用的连接：复用Spring Boot按spring.redis配置（单机、哨兵、集群、SSL、url）创建的共享原生连接，
+     * 应用关闭时释放；spring.redis.lettuce.pool只用于事务、阻塞命令等独占连接，普通命令仍走共享连接
+     */
+    @Bean(destroyMethod = "close")
+    public LettuceConnection asyncRedisConnection(LettuceConnectionFactory connectionFactory){
+        //关闭共享后每次取得的是独占连接，不能在整个应用中复用
+        Assert.state(connectionFactory.getShareNativeConnection(), "缓存异步查询需要LettuceConnectionFactory开启shareNativeConnection");
+        return (LettuceConnection) connectionFactory.getConnection();
+    }
+
+    /**
+     * 缓存异步查询使用的lettuce异步命令，key和value均为原始字节
+     */
+    @Bean
+    public RedisClusterAsyncCommands<byte[], byte[]> asyncRedisCommands(LettuceConnection asyncRedisConnection){
+        return asyncRedisConnection.getNativeConnection();
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory connectionFactory, CacheClient cacheClient, SeckillSoldOutRegistry soldOutRegistry,
+            SeckillVoucherCache seckillVoucherCache){
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //缓存失效广播，各节点清理本地缓存
+        container.addMessageListener(
+                (message, pattern) -> cacheClient.evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //布隆过滤器新增广播，各节点同步写入
+        container.addMessageListener(
+                (message, pattern) -> cacheClient.onBloomFilterAdd(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_BLOOM_ADD_CHANNEL));
+        //缓存版本号变化广播，各节点刷新本地版本号
+        container.addMessageListener(
+                (message, pattern) -> cacheClient.onNamespaceBump(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_NAMESPACE_CHANNEL));
+        //秒杀券售罄及补充库存广播，各节点同步售罄标记
+        container.addMessageListener(
+                (message, pattern) -> soldOutRegistry.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        //新增秒杀券广播，各节点删除本地的秒杀时间缓存
+        container.addMessageListener(
+                (message, pattern) -> seckillVoucherCache.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_VOUCHER_CHANNEL));
+        return container;
+    }
+}
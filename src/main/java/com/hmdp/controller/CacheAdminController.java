@@ -0,0 +1,89 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShopCachePreloader;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存运维控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopCachePreloader shopCachePreloader;
+
+    /**
+     * 查询各key前缀布隆过滤器的统计信息
+     * @return 插入数、拦截数、误判数及误判率
+     */
+    @GetMapping("/bloom")
+    public Result bloomFilterStats() {
+        return Result.ok(cacheClient.bloomFilterStats());
+    }
+
+    /**
+     * 查询各key前缀当前的版本号
+     */
+    @GetMapping("/namespace")
+    public Result namespaces() {
+        return Result.ok(cacheClient.namespaceGenerations());
+    }
+
+    /**
+     * 版本号加一，使该前缀下的全部缓存立即失效，旧数据按TTL自然过期
+     * @param prefix key前缀，如cache:shop:
+     * @return 新的版本号
+     */
+    @PostMapping("/namespace/bump")
+    public Result bumpNamespace(@RequestParam("prefix") String prefix) {
+        if (!cacheClient.isNamespaceEnabled(prefix)) {
+            return Result.fail("该前缀未开启版本号");
+        }
+        return Result.ok(cacheClient.bumpNamespace(prefix));
+    }
+
+    /**
+     * 查询本节点当前的热点key
+     * @return key到一个窗口内估计访问量的映射，按访问量降序
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(cacheClient.hotKeys());
+    }
+
+    /**
+     * 触发店铺缓存预热，异步执行
+     * @return 当前预热进度
+     */
+    @PostMapping("/preload/shop")
+    public Result preloadShop() {
+        if (!shopCachePreloader.start()) {
+            return Result.fail("预热任务正在运行");
+        }
+        return Result.ok(shopCachePreloader.progress());
+    }
+
+    /**
+     * 查询店铺缓存预热进度
+     * @return 已写入数、总数、耗时及吞吐
+     */
+    @GetMapping("/preload/shop")
+    public Result preloadShopProgress() {
+        return Result.ok(shopCachePreloader.progress());
+    }
+}
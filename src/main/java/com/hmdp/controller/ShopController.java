@@ -7,9 +7,13 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -27,14 +31,25 @@ public class ShopController {
     public IShopService shopService;
 
     /**
-     * 根据id查询商铺信息
+     * 根据id查询商铺信息，直接返回缓存中已序列化的响应；支持条件请求：
+     * ETag和Last-Modified取自商铺的updateTime，未变化时返回304不带响应体
      * @param id 商铺id
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-
-        return shopService.queryById(id);
+    public CompletableFuture<ResponseEntity<byte[]>> queryShopById(@PathVariable("id") Long id) {
+        // 异步查询，等待redis期间释放请求线程
+        return shopService.queryResponseById(id).thenApply(snapshot -> {
+            // If-None-Match/If-Modified-Since由Spring比对，命中时直接返回304
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .eTag(snapshot.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (snapshot.getLastModified() >= 0) {
+                builder.lastModified(snapshot.getLastModified());
+            }
+            return builder.body(snapshot.getBody());
+        });
     }
 
     /**
@@ -44,10 +59,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并加入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
-import com.hmdp.dto.Result;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -22,11 +25,20 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询店铺类型列表，直接返回本节点快照中已序列化的响应；
+     * 响应带ETag，请求头If-None-Match与之相同时返回304
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
+    public ResponseEntity<byte[]> queryTypeList() {
 //        List<ShopType> typeList = typeService
 //                .query().orderByAsc("sort").list();
 
-        return typeService.queryTypeList();
+        ResponseSnapshot snapshot = typeService.queryTypeListSnapshot();
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
     }
 }
@@ -4,9 +4,13 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -30,7 +34,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -46,12 +50,27 @@ public class VoucherController {
     }
 
     /**
-     * 查询店铺的优惠券列表
+     * 补充秒杀券库存，并清除售罄标记
+     * @param voucherId 优惠券id
+     * @param count 补充数量
+     * @return 无
+     */
+    @PostMapping("seckill/{id}/restock")
+    public Result restockSeckillVoucher(@PathVariable("id") Long voucherId, @RequestParam("count") Integer count) {
+        return voucherService.restockSeckillVoucher(voucherId, count);
+    }
+
+    /**
+     * 查询店铺的优惠券列表，直接返回缓存中已序列化的响应
      * @param shopId 店铺id
      * @return 优惠券列表
      */
     @GetMapping("/list/{shopId}")
-    public Result queryVoucherOfShop(@PathVariable("shopId") Long shopId) {
-       return voucherService.queryVoucherOfShop(shopId);
+    public CompletableFuture<ResponseEntity<byte[]>> queryVoucherOfShop(@PathVariable("shopId") Long shopId) {
+        return voucherService.queryVoucherResponseOfShop(shopId).thenApply(snapshot -> ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody()));
     }
 }
@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -30,4 +31,25 @@ public class VoucherOrderController {
 
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 秒杀排队，领取号码；同一用户重复领取返回原号码
+     * @param voucherId 优惠券id
+     * @return 号码及状态
+     */
+    @PostMapping("seckill/{id}/ticket")
+    public Result takeSeckillTicket(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.takeSeckillTicket(voucherId);
+    }
+
+    /**
+     * 查询号码是否已轮到，不需要登录
+     * @param voucherId 优惠券id
+     * @param ticket 号码
+     * @return 号码状态
+     */
+    @GetMapping("seckill/{id}/ticket/{ticket}")
+    public Result querySeckillTicket(@PathVariable("id") Long voucherId, @PathVariable("ticket") Long ticket) {
+        return voucherOrderService.querySeckillTicket(voucherId, ticket);
+    }
 }
@@ -0,0 +1,62 @@
+package com.hmdp.dto;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 已序列化的响应快照，创建后不可修改：保存最终的响应字节和校验信息（ETag、Last-Modified）
+ */
+@Getter
+public class ResponseSnapshot {
+
+    private final byte[] body;
+    private final String etag;
+    //最后修改时间（毫秒），小于0表示没有
+    private final long lastModified;
+
+    private ResponseSnapshot(byte[] body, String etag, long lastModified) {
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * 以内容哈希作为ETag
+     */
+    public static ResponseSnapshot of(byte[] body) {
+        return of(body, -1);
+    }
+
+    /**
+     * 以内容哈希作为ETag，并带上最后修改时间；时间只有秒级精度，不能用来区分内容
+     */
+    public static ResponseSnapshot of(byte[] body, long lastModified) {
+        return new ResponseSnapshot(body, "\"" + DigestUtil.md5Hex(body) + "\"", lastModified);
+    }
+
+    /**
+     * 编码为写入redis的字节：etag长度(2) + etag + lastModified(8) + body
+     */
+    public byte[] toBytes() {
+        byte[] etagBytes = etag.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + etagBytes.length + 8 + body.length)
+                .putShort((short) etagBytes.length)
+                .put(etagBytes)
+                .putLong(lastModified)
+                .put(body)
+                .array();
+    }
+
+    public static ResponseSnapshot fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte[] etagBytes = new byte[buffer.getShort()];
+        buffer.get(etagBytes);
+        long lastModified = buffer.getLong();
+        byte[] body = new byte[buffer.remaining()];
+        buffer.get(body);
+        return new ResponseSnapshot(body, new String(etagBytes, StandardCharsets.UTF_8), lastModified);
+    }
+}
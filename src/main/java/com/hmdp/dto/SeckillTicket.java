@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 秒杀排队号码及其状态
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeckillTicket {
+    //排队号码，从1开始
+    private Long ticket;
+    //是否已轮到，轮到后才能下单
+    private Boolean admitted;
+    //前面还有多少号未放行
+    private Long ahead;
+    //建议多久后再查询（毫秒）
+    private Long retryAfter;
+}
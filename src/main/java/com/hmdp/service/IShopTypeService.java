@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.baomidou.mybatisplus.core.conditions.interfaces.Func;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -19,4 +20,14 @@ public interface IShopTypeService extends IService<ShopType> {
 
 
     Result queryTypeList();
+
+    /**
+     * 店铺类型列表的响应快照，包含序列化后的Result和ETag
+     */
+    ResponseSnapshot queryTypeListSnapshot();
+
+    /**
+     * 丢弃本节点的店铺类型快照，下次访问时重建
+     */
+    void refreshTypeListSnapshot();
 }
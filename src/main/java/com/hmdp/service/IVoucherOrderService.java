@@ -1,9 +1,12 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,25 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    Result createVoucherOrder(Long voucherId);
+    Result takeSeckillTicket(Long voucherId);
+
+    Result querySeckillTicket(Long voucherId, Long ticket);
+
+    /**
+     * 秒杀开始前加载库存和一人一单的用户集合，预热下单路径
+     */
+    void prepareSeckill(SeckillVoucher voucher);
+
+    /**
+     * 秒杀结束后核对库存，并让秒杀相关的key过期
+     * @param force 库存不一致时是否仍然过期
+     * @return 是否已处理
+     */
+    boolean finishSeckill(SeckillVoucher voucher, boolean force);
+
+    /**
+     * 一批订单在一个事务中扣减库存并写入数据库
+     * @return 数据库库存不足、未能写入的订单
+     */
+    List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
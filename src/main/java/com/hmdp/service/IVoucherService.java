@@ -1,9 +1,12 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,11 @@ public interface IVoucherService extends IService<Voucher> {
 
     Result queryVoucherOfShop(Long shopId);
 
+    CompletableFuture<ResponseSnapshot> queryVoucherResponseOfShop(Long shopId);
+
+    void addVoucher(Voucher voucher);
+
     void addSeckillVoucher(Voucher voucher);
+
+    Result restockSeckillVoucher(Long voucherId, Integer count);
 }
@@ -4,23 +4,35 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.utils.BloomFilter;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationQueue;
+import com.hmdp.utils.CacheRebuildExecutor;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -33,6 +45,7 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
@@ -42,6 +55,64 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private CacheRebuildExecutor rebuildExecutor;
+
+    @Resource
+    private CacheInvalidationQueue cacheInvalidationQueue;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    //定期重建布隆过滤器
+    private final ScheduledExecutorService bloomRebuildScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shop-bloom-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init(){
+        //热点店铺走本地缓存
+        cacheClient.enableLocalCache(CACHE_SHOP_KEY);
+        //热点店铺在逻辑过期前按概率提前重建，避免各节点同时抢锁
+        cacheClient.enableEarlyRefresh(CACHE_SHOP_KEY, CACHE_EARLY_REFRESH_BETA);
+        //key中带版本号，版本号加一即可让全部店铺缓存失效
+        cacheClient.enableNamespace(CACHE_SHOP_KEY);
+        //店铺详情的响应字节同样走本地缓存，版本号用于整体清理
+        cacheClient.enableLocalCache(CACHE_SHOP_RESPONSE_KEY);
+        cacheClient.enableNamespace(CACHE_SHOP_RESPONSE_KEY);
+        //从数据库重建店铺id布隆过滤器；不经过saveShop写入的店铺（导入、其它服务写库）在下次重建后可查到
+        rebuildBloomFilter();
+        bloomRebuildScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rebuildBloomFilter();
+            } catch (Exception e) {
+                log.warn("重建店铺布隆过滤器失败", e);
+            }
+        }, SHOP_BLOOM_REBUILD_INTERVAL, SHOP_BLOOM_REBUILD_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        bloomRebuildScheduler.shutdownNow();
+    }
+
+    public void rebuildBloomFilter(){
+        //装入期间saveShop新增的id同时写入新的过滤器
+        cacheClient.rebuildBloomFilter(CACHE_SHOP_KEY, new BloomFilter(SHOP_BLOOM_EXPECTED_INSERTIONS, SHOP_BLOOM_FPP),
+                bloomFilter -> listObjs(new QueryWrapper<Shop>().select("id")).forEach(bloomFilter::put));
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        //写入数据库
+        save(shop);
+        //写入布隆过滤器
+        cacheClient.addToBloomFilter(CACHE_SHOP_KEY, shop.getId());
+        return Result.ok(shop.getId());
+    }
+
     @Override
     public Result queryById(Long id) {
         //缓存穿透
@@ -60,7 +131,34 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Override
+    public CompletableFuture<ResponseSnapshot> queryResponseById(Long id) {
+        //缓存最终的响应字节，命中时不再经过 redis数据→Shop→Result→json 的转换
+        return cacheClient.queryResponseAsync(CACHE_SHOP_RESPONSE_KEY, id, this::buildShopResponse,
+                        CACHE_SHOP_RESPONSE_TTL, TimeUnit.MINUTES)
+                //店铺不存在时不缓存响应
+                .thenApply(snapshot -> snapshot != null ? snapshot : toSnapshot(Result.ok(), -1));
+    }
+
+    //生成店铺详情的响应，ETag取自响应内容的哈希，Last-Modified取自updateTime
+    private ResponseSnapshot buildShopResponse(Long id){
+        Result result = queryById(id);
+        Shop shop = (Shop) result.getData();
+        if(shop == null){
+            return null;
+        }
+        long lastModified = shop.getUpdateTime() == null
+                ? -1 : shop.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return toSnapshot(result, lastModified);
+    }
+
+    private ResponseSnapshot toSnapshot(Result result, long lastModified){
+        try {
+            return ResponseSnapshot.of(objectMapper.writeValueAsBytes(result), lastModified);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
     public Shop queryWithLogicalExpire(Long id){
         String key = CACHE_SHOP_KEY + id;
@@ -88,13 +186,20 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         String lockKey = LOCK_SHOP_KEY + id;
         //判断是否取锁成功
         if(tryLock(lockKey)){
-            //成功。开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() ->{
-                //重建缓存
-                this.saveShop2Redis(id, 20L);
-                //释放锁
-                unLock((lockKey));
+            //成功。交给重建线程池，实现缓存重建
+            boolean submitted = rebuildExecutor.submit(key, () -> {
+                try {
+                    //重建缓存
+                    this.saveShop2Redis(id, 20L);
+                } finally {
+                    //释放锁
+                    unLock(lockKey);
+                }
             });
+            //队列已满被丢弃，释放锁
+            if(!submitted){
+                unLock(lockKey);
+            }
         }
 
         //返回过期的商铺信息
@@ -103,56 +208,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
 
     public Shop queryWithMutex(Long id){
-        String key = CACHE_SHOP_KEY + id;
-
-        //从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)){
-            //命中，返回商铺信息
-            //判断是否是空值
-            if(shopJson == null){
-                //是空
-                return null;
-            }
-            //不是空
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        //未命中，实现缓存重建
-        //获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            //判断是否获取成功
-            if(!isLock){
-                //失败，则休眠并重试
-                Thread.sleep(50); //休眠50毫秒
-                queryWithMutex(id); //重试，即递归
-            }
-            //成功，根据id查询数据库
-            shop = getById(id);
-
-            //判断商铺是否存在
-            //不存在，返回404
-            if(shop == null){
-                //将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "null", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                //返回错误信息
-                return null;
-
-            }
-            //存在，将商铺数据写入redis
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            //释放互斥锁
-            unLock(lockKey);
-        }
-
-        //返回
-        return shop;
+        //同一节点只有一个线程竞争互斥锁并查询数据库，其他线程等待其结果，不再休眠递归
+        return cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
 
@@ -204,12 +261,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public void saveShop2Redis(Long id, Long expireSeconds){
         //查询店铺数据
         Shop shop = getById(id);
-        //封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //写入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        //封装逻辑过期时间，写入redis（带版本号的key）
+        cacheClient.setWithLogicalExpire(cacheClient.key(CACHE_SHOP_KEY, id), shop, expireSeconds, TimeUnit.SECONDS);
     }
 
 
@@ -220,10 +273,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(id==null){
             return Result.fail("店铺id不能为空");
         }
+        //update_time交给数据库ON UPDATE维护，不使用客户端传入的值，保证ETag随数据变化
+        shop.setUpdateTime(null);
         //更新数据库
         updateById(shop);
-        //删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        //事务提交后再批量删除缓存，同时通知各节点清理本地缓存
+        cacheInvalidationQueue.invalidate(cacheClient.key(CACHE_SHOP_KEY, id));
+        cacheInvalidationQueue.invalidate(cacheClient.key(CACHE_SHOP_RESPONSE_KEY, id));
 
         return Result.ok();
     }
@@ -3,17 +3,26 @@ package com.hmdp.service.impl;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.interfaces.Func;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
 
 /**
  * <p>
@@ -29,10 +38,60 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    //店铺类型列表的响应快照及生成时的版本号前缀，整体替换
+    private volatile TypeListSnapshot typeListSnapshot;
+
+    @PostConstruct
+    private void init(){
+        //key中带版本号，版本号加一即可让店铺类型缓存失效
+        cacheClient.enableNamespace(CACHE_SHOP_TYPE_KEY);
+        //版本号变化（店铺类型有修改）时丢弃快照
+        cacheClient.addNamespaceListener(CACHE_SHOP_TYPE_KEY, this::refreshTypeListSnapshot);
+    }
+
+    @Override
+    public ResponseSnapshot queryTypeListSnapshot() {
+        //每次比较版本号：广播丢失时，定期从redis重新读取的版本号变化后同样会丢弃快照
+        String namespace = cacheClient.namespace(CACHE_SHOP_TYPE_KEY);
+        TypeListSnapshot current = typeListSnapshot;
+        if(current != null && current.namespace.equals(namespace)){
+            return current.snapshot;
+        }
+        synchronized (this){
+            current = typeListSnapshot;
+            if(current != null && current.namespace.equals(namespace)){
+                return current.snapshot;
+            }
+            Result result = queryTypeList();
+            ResponseSnapshot snapshot;
+            try {
+                snapshot = ResponseSnapshot.of(objectMapper.writeValueAsBytes(result));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+            //查询失败时不保存快照
+            if(Boolean.TRUE.equals(result.getSuccess())){
+                typeListSnapshot = new TypeListSnapshot(namespace, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    @Override
+    public void refreshTypeListSnapshot() {
+        typeListSnapshot = null;
+    }
+
     @Override
     public Result queryTypeList() {
 
-        String key = "shop:type:list:";
+        String key = cacheClient.key(CACHE_SHOP_TYPE_KEY, "list");
         //从redis查询店铺类型缓存
         String shopType = stringRedisTemplate.opsForValue().get(key);
         //判断是否命中
@@ -48,9 +107,19 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
             //不存在，返回错误信息
             return Result.fail("未找到商铺信息");
         }
-        //存在，写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shopTypes));
+        //存在，写入redis，设置TTL，版本号变化后旧key自然过期
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shopTypes), CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
         //返回
         return Result.ok(shopTypes);
     }
+
+    private static final class TypeListSnapshot {
+        private final String namespace;
+        private final ResponseSnapshot snapshot;
+
+        private TypeListSnapshot(String namespace, ResponseSnapshot snapshot) {
+            this.namespace = namespace;
+            this.snapshot = snapshot;
+        }
+    }
 }
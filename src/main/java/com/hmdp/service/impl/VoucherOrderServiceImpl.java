@@ -1,6 +1,8 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.SeckillTicket;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
@@ -8,18 +10,58 @@ import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
-import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillVoucherCache;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.UserHolder;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -29,9 +71,23 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    //秒杀脚本的返回值
+    private static final long SECKILL_OK = 0L;
+    private static final long SECKILL_STOCK_EMPTY = 1L;
+    private static final long SECKILL_DUPLICATE = 2L;
+    private static final long SECKILL_STOCK_NOT_LOADED = 3L;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
@@ -40,96 +96,450 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
-    @Autowired
-    private RedissonClient redissonClient;
+
+    //本类的代理对象，异步线程中通过它调用事务方法
+    @Lazy
+    @Resource
+    private IVoucherOrderService self;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillWaitingRoom waitingRoom;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    //按券恢复redis秒杀数据时使用的本地锁
+    private final Map<Long, Object> restoreLocks = new ConcurrentHashMap<>();
+
+    //消费者名称，需在重启后保持不变，才能找回本节点未确认的消息
+    @Value("${hmdp.seckill.consumer-name:${HOSTNAME:c1}}")
+    private String consumerName;
+
+    //从stream.orders消费者组读取订单，批量写入数据库
+    private final ExecutorService seckillOrderExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "seckill-order");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+    //上次检查待确认列表的时间
+    private long lastRecoverTime;
+
+    //从下单到写入数据库的延迟、批次大小和耗时、待确认消息数
+    private Timer lagTimer;
+    private Timer batchTimer;
+    private DistributionSummary batchSize;
+    private final AtomicLong pendingCount = new AtomicLong();
+
+
+    @PostConstruct
+    private void init(){
+        lagTimer = Timer.builder("hmdp.seckill.order.lag").publishPercentileHistogram().register(meterRegistry);
+        batchTimer = Timer.builder("hmdp.seckill.order.batch.duration").publishPercentileHistogram().register(meterRegistry);
+        batchSize = DistributionSummary.builder("hmdp.seckill.order.batch.size").register(meterRegistry);
+        Gauge.builder("hmdp.seckill.order.pending", pendingCount, AtomicLong::get).register(meterRegistry);
+        createGroup();
+        seckillOrderExecutor.submit(this::handleOrderStream);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        seckillOrderExecutor.shutdown();
+    }
+
+    //创建消费者组，队列不存在时一并创建
+    private void createGroup(){
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (DataAccessException e) {
+            //消费者组已存在
+            if(!String.valueOf(e.getMessage()).contains("BUSYGROUP")){
+                throw e;
+            }
+        }
+    }
+
+    private void handleOrderStream(){
+        //先处理本节点上次未确认的消息（如处理中途重启）
+        recoverPendingList();
+        while (running) {
+            try {
+                //定期找回其它节点长时间未确认的消息
+                if(System.currentTimeMillis() - lastRecoverTime > TimeUnit.SECONDS.toMillis(SECKILL_ORDER_RECOVER_INTERVAL)){
+                    recoverPendingList();
+                }
+                //读取新消息 XREADGROUP GROUP g1 c1 COUNT 100 BLOCK 2000 STREAMS stream.orders >
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                        StreamReadOptions.empty().count(SECKILL_ORDER_BATCH_SIZE).block(Duration.ofSeconds(SECKILL_ORDER_BLOCK_TTL)),
+                        StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed())
+                );
+                if(records == null || records.isEmpty()){
+                    continue;
+                }
+                handleRecords(records);
+            } catch (Exception e) {
+                log.error("处理订单异常", e);
+                //未确认的消息留在待确认列表，下次检查时重试
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 处理待确认列表：投递次数过多的消息转入死信队列，把其它节点空闲过久的消息转给本节点，
+     * 再从头读取本节点的待确认消息；处理失败的批次逐条重试，仍失败的留到下次检查
+     */
+    private void recoverPendingList(){
+        lastRecoverTime = System.currentTimeMillis();
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP,
+                    Range.unbounded(), SECKILL_ORDER_BATCH_SIZE * 10L);
+            deadLetterExhausted(pending);
+            claimIdleMessages(pending);
+            String offset = "0";
+            while (running) {
+                //读取待确认消息 XREADGROUP GROUP g1 c1 COUNT 100 STREAMS stream.orders 0
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                        StreamReadOptions.empty().count(SECKILL_ORDER_BATCH_SIZE),
+                        StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.from(offset))
+                );
+                if(records == null || records.isEmpty()){
+                    break;
+                }
+                try {
+                    handleRecords(records);
+                } catch (Exception e) {
+                    log.error("处理待确认订单异常，逐条重试", e);
+                    //避免一条无法处理的消息拖住整批
+                    for (MapRecord<String, Object, Object> record : records) {
+                        try {
+                            handleRecords(Collections.singletonList(record));
+                        } catch (Exception ex) {
+                            log.error("处理待确认订单失败，id={}", record.getId(), ex);
+                        }
+                    }
+                }
+                offset = records.get(records.size() - 1).getId().getValue();
+            }
+            pendingCount.set(stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP).getTotalPendingMessages());
+        } catch (Exception e) {
+            log.error("处理待确认订单列表异常", e);
+        }
+    }
+
+    //投递次数过多（反复处理失败）的消息转入死信队列，不再重试；用户仍保留在一人一单的集合中，由人工核对后补单
+    private void deadLetterExhausted(PendingMessages pending){
+        for (PendingMessage message : pending) {
+            if(message.getTotalDeliveryCount() < SECKILL_ORDER_MAX_DELIVERIES){
+                continue;
+            }
+            RecordId id = message.getId();
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(SECKILL_ORDER_STREAM_KEY, Range.closed(id.getValue(), id.getValue()));
+            if(records != null && !records.isEmpty()){
+                deadLetter(records.get(0).getValue(), "exhausted");
+            }
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, id);
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM_KEY, id);
+            log.error("订单消息投递{}次仍未处理成功，已转入死信队列，id={}", message.getTotalDeliveryCount(), id);
+        }
+    }
+
+    //其它消费者（如已下线的节点）空闲过久的消息转给本节点
+    private void claimIdleMessages(PendingMessages pending){
+        Duration minIdle = Duration.ofSeconds(SECKILL_ORDER_CLAIM_IDLE_TTL);
+        List<RecordId> idle = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if(message.getTotalDeliveryCount() < SECKILL_ORDER_MAX_DELIVERIES
+                    && !consumerName.equals(message.getConsumerName()) && message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0){
+                idle.add(message.getId());
+            }
+        }
+        if(idle.isEmpty()){
+            return;
+        }
+        stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands()
+                .xClaimJustId(SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, consumerName,
+                        RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(idle.toArray(new RecordId[0]))));
+        log.info("接管空闲订单消息{}条", idle.size());
+    }
+
+    //一批消息在一个事务中写入数据库，提交后确认并删除；库存不足未写入的订单先转入死信队列
+    private void handleRecords(List<MapRecord<String, Object, Object>> records){
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        RecordId[] ids = new RecordId[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            ids[i] = record.getId();
+        }
+        List<VoucherOrder> rejected = batchTimer.record(() -> self.createVoucherOrders(orders));
+        batchSize.record(orders.size());
+        for (VoucherOrder order : rejected) {
+            Map<Object, Object> value = new HashMap<>(4);
+            value.put("userId", order.getUserId().toString());
+            value.put("voucherId", order.getVoucherId().toString());
+            value.put("id", order.getId().toString());
+            deadLetter(value, "stock");
+            //撤销一人一单的记录，用户可以重新下单
+            stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + order.getVoucherId(), order.getUserId().toString());
+        }
+        //确认消息 XACK stream.orders g1 id...，已写入数据库的消息不再保留
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM_KEY, ids);
+        //消息id中的时间戳即下单时间
+        long now = System.currentTimeMillis();
+        for (RecordId id : ids) {
+            lagTimer.record(now - id.getTimestamp(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //写入死信队列，保留订单内容和原因供人工处理
+    private void deadLetter(Map<Object, Object> value, String reason){
+        Map<Object, Object> deadLetter = new HashMap<>(value);
+        deadLetter.put("reason", reason);
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_KEY, deadLetter);
+    }
+
+    private static void sleepQuietly(){
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
-        //查询优惠券信息
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        //本节点已知售罄，直接返回
+        if(soldOutRegistry.isSoldOut(voucherId)){
+            return Result.fail("库存不足");
+        }
+        //查询秒杀时间，命中本地缓存时不访问redis和数据库
+        SeckillVoucherCache.Window window = seckillVoucherCache.get(voucherId);
+        if(window == null){
+            return Result.fail("秒杀券不存在");
+        }
+        long now = System.currentTimeMillis();
         //判断秒杀是否开始
-        if(voucher.getBeginTime().isAfter(LocalDateTime.now())) {
+        if(window.notStarted(now)) {
             //没开始，返回异常结果
             return Result.fail("秒杀尚未开始！");
         }
         //判断秒杀是否结束
-        if(voucher.getEndTime().isBefore(LocalDateTime.now())) {
+        if(window.ended(now)) {
             //已结束，返回异常结果
             return Result.fail("秒杀已经结束！");
         }
-        //开始，判断库存是否充足
-        if (voucher.getStock()<1) {
-            //不充足，返回异常结果
+
+        Long userId = UserHolder.getUser().getId();
+        //开启排队时，号码轮到后才能下单
+        if(waitingRoom.isEnabled() && !waitingRoom.isAdmitted(voucherId, userId)){
+            return Result.fail("还没有轮到您，请排队后再试");
+        }
+        long orderId = redisIdWorker.nextId("order");
+        //执行lua脚本，原子地判断库存、一人一单，扣减库存并把订单写入消息队列
+        long r = executeSeckill(voucherId, userId, orderId);
+        if(r == SECKILL_STOCK_NOT_LOADED){
+            //新增秒杀券时未写入redis（如历史数据）或redis数据丢失，按数据库恢复已购用户和剩余库存
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if(voucher == null){
+                return Result.fail("秒杀券不存在");
+            }
+            restoreSeckill(voucher);
+            r = executeSeckill(voucherId, userId, orderId);
+        }
+        if(r == SECKILL_STOCK_EMPTY){
+            //标记售罄并通知其它节点
+            soldOutRegistry.markSoldOut(voucherId);
             return Result.fail("库存不足");
         }
+        if(r == SECKILL_DUPLICATE){
+            return Result.fail("用户已经购买过一次！");
+        }
 
-        Long userId = UserHolder.getUser().getId();
-        //创建锁对象
-//        SimpleRedisLock lock = new SimpleRedisLock(stringRedisTemplate, "order:" + userId);
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        //获取锁
-        boolean isLock = lock.tryLock();
-        //判断是否获取锁成功
-        if(!isLock){
-            //获取锁失败，返回错误或重试
-            return Result.fail("一个人只允许下一单");
+        //有购买资格，订单已进入消息队列，由后台线程写入数据库
+        return Result.ok(orderId);
+    }
 
+    @Override
+    public Result takeSeckillTicket(Long voucherId) {
+        //本节点已知售罄，不再排队
+        if(soldOutRegistry.isSoldOut(voucherId)){
+            return Result.fail("库存不足");
+        }
+        SeckillVoucherCache.Window window = seckillVoucherCache.get(voucherId);
+        if(window == null){
+            return Result.fail("秒杀券不存在");
+        }
+        if(window.ended(System.currentTimeMillis())) {
+            return Result.fail("秒杀已经结束！");
         }
+        //领取号码，返回号码及当前状态
+        long ticket = waitingRoom.take(voucherId, UserHolder.getUser().getId());
+        return Result.ok(waitingRoom.status(voucherId, ticket));
+    }
 
-        //获取代理对象（事务）
-        try {
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
-        } catch (IllegalStateException e) {
-            throw new RuntimeException(e);
-        } finally {
-            //释放锁
-            lock.unlock();
+    @Override
+    public Result querySeckillTicket(Long voucherId, Long ticket) {
+        //只按时间计算，不访问redis和数据库
+        SeckillTicket status = waitingRoom.status(voucherId, ticket);
+        return status == null ? Result.fail("秒杀券不存在") : Result.ok(status);
+    }
+
+    @Override
+    public void prepareSeckill(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        //加载秒杀时间到本地缓存
+        seckillVoucherCache.get(voucherId);
+        //库存未加载时（如历史数据或redis数据丢失），按数据库恢复
+        restoreSeckill(voucher);
+        //提前加载下单脚本，第一次下单时不需要传输脚本内容
+        stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(SECKILL_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 库存未加载到redis时按数据库恢复：先根据已有订单恢复一人一单的用户集合，再加载库存，
+     * 库存可见时已购用户不会再次通过；同一节点同一张券同时只有一个线程恢复
+     */
+    private void restoreSeckill(SeckillVoucher voucher){
+        Long voucherId = voucher.getVoucherId();
+        String stockKey = SECKILL_STOCK_KEY + voucherId;
+        synchronized (restoreLocks.computeIfAbsent(voucherId, k -> new Object())) {
+            try {
+                if(Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey))){
+                    return;
+                }
+                String[] userIds = query().select("user_id").eq("voucher_id", voucherId).list().stream()
+                        .map(order -> order.getUserId().toString())
+                        .distinct()
+                        .toArray(String[]::new);
+                if(userIds.length > 0){
+                    stringRedisTemplate.opsForSet().add(SECKILL_ORDER_KEY + voucherId, userIds);
+                }
+                //已加载时不覆盖
+                if(Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(stockKey, voucher.getStock().toString()))){
+                    log.info("已加载秒杀库存，voucherId={}，stock={}，已购用户数={}", voucherId, voucher.getStock(), userIds.length);
+                }
+            } finally {
+                restoreLocks.remove(voucherId);
+            }
         }
+    }
 
+    @Override
+    public boolean finishSeckill(SeckillVoucher voucher, boolean force) {
+        Long voucherId = voucher.getVoucherId();
+        //核对redis剩余库存和数据库库存；不一致时可能还有订单未写入数据库，等待下次检查
+        String stock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+        long redisStock = stock == null ? 0 : Long.parseLong(stock);
+        SeckillVoucher current = seckillVoucherService.getById(voucherId);
+        long dbStock = current == null ? 0 : current.getStock();
+        if(redisStock != dbStock){
+            if(!force){
+                log.info("秒杀库存尚未一致，稍后再检查，voucherId={}，redis={}，db={}", voucherId, redisStock, dbStock);
+                return false;
+            }
+            log.warn("秒杀库存不一致，voucherId={}，redis={}，db={}", voucherId, redisStock, dbStock);
+        }
+        //保留一段时间后过期，期间结束后的请求仍可正常判断
+        List<String> keys = Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId,
+                SECKILL_TICKET_KEY + voucherId, SECKILL_TICKET_SEQ_KEY + voucherId, SECKILL_VOUCHER_KEY + voucherId);
+        for (String key : keys) {
+            stringRedisTemplate.expire(key, SECKILL_KEY_RETAIN_TTL, TimeUnit.HOURS);
+        }
+        return true;
+    }
 
-//        synchronized (userId.toString().intern()) {
-//            //获取代理对象（事务）
-//            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-//            return proxy.createVoucherOrder(voucherId);
-//        }
+    private long executeSeckill(Long voucherId, Long userId, long orderId){
+        Long r = stringRedisTemplate.execute(
+                SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM_KEY),
+                userId.toString(), voucherId.toString(), String.valueOf(orderId)
+        );
+        return r == null ? SECKILL_STOCK_EMPTY : r;
     }
 
+    @Override
     @Transactional
-    public Result createVoucherOrder(Long voucherId) {
-        //充足，根据优惠券id和用户id查询订单(一人一单)
-        Long userId = UserHolder.getUser().getId();
+    public List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //同一批中的重复订单（消息重复投递）直接去掉
+        Map<Long, List<VoucherOrder>> byVoucher = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (VoucherOrder order : voucherOrders) {
+            if(!seen.add(order.getUserId() + ":" + order.getVoucherId())){
+                log.error("用户已经购买过一次，order={}", order);
+                continue;
+            }
+            byVoucher.computeIfAbsent(order.getVoucherId(), k -> new ArrayList<>()).add(order);
+        }
 
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        //判断是否存在
-        if(count > 0){
-            //用户已经购买过了
-            return Result.fail("用户已经购买过一次！");
+        List<VoucherOrder> toSave = new ArrayList<>(voucherOrders.size());
+        List<VoucherOrder> rejected = new ArrayList<>();
+        byVoucher.forEach((voucherId, orders) -> {
+            //同一张券的订单合并为一次扣减
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + orders.size())
+                    .eq("voucher_id", voucherId).ge("stock", orders.size())
+                    .update();
+            if(success){
+                toSave.addAll(orders);
+                return;
+            }
+            //库存与redis不一致，逐个扣减，扣不到的订单交给调用方转入死信队列
+            for (VoucherOrder order : orders) {
+                if(decrementStock(voucherId)){
+                    toSave.add(order);
+                } else {
+                    log.error("库存不足，order={}", order);
+                    rejected.add(order);
+                }
+            }
+        });
+        if(toSave.isEmpty()){
+            return rejected;
         }
+        //一条多行INSERT写入；一人一单由(user_id, voucher_id)唯一索引保证，不再加锁和查询
+        try {
+            getBaseMapper().insertBatch(toSave);
+        } catch (DuplicateKeyException e) {
+            //批次中有已存在的订单（消息重复投递，或redis数据丢失后重复下单），整条INSERT未生效，逐条写入
+            for (VoucherOrder order : toSave) {
+                try {
+                    getBaseMapper().insert(order);
+                } catch (DuplicateKeyException ex) {
+                    //用户已经购买过，补回已扣减的库存
+                    log.error("用户已经购买过一次，order={}", order);
+                    incrementStock(order.getVoucherId());
+                }
+            }
+        }
+        return rejected;
+    }
 
-        // 扣减库存
-        boolean success = seckillVoucherService.update()
+    private boolean decrementStock(Long voucherId){
+        return seckillVoucherService.update()
                 .setSql("stock = stock - 1") //set stocj = stock -1
                 .eq("voucher_id", voucherId).gt("stock", 0) // where id = ? and stock > 0
                 .update();
-        if(!success){
-            //扣减失败
-            return Result.fail("库存不足");
-        }
-        //创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        //订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        //用户id
-//        Long userId = UserHolder.getUser().getId();
-        voucherOrder.setUserId(userId);
-        //代金券id
-        voucherOrder.setVoucherId(voucherId);
-        save(voucherOrder);
-
-        //返回订单id
-        return Result.ok(orderId);
+    }
 
+    private void incrementStock(Long voucherId){
+        seckillVoucherService.update()
+                .setSql("stock = stock + 1")
+                .eq("voucher_id", voucherId)
+                .update();
     }
 }
@@ -1,17 +1,34 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationQueue;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillVoucherCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_RESPONSE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_RESPONSE_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -27,6 +44,30 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheInvalidationQueue cacheInvalidationQueue;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    @PostConstruct
+    private void init(){
+        //key中带版本号，版本号加一即可清理全部店铺的优惠券列表响应
+        cacheClient.enableNamespace(CACHE_VOUCHER_RESPONSE_KEY);
+    }
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -35,6 +76,26 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         return Result.ok(vouchers);
     }
 
+    @Override
+    public CompletableFuture<ResponseSnapshot> queryVoucherResponseOfShop(Long shopId) {
+        //缓存最终的响应字节；列表中含秒杀库存，TTL较短
+        return cacheClient.queryResponseAsync(CACHE_VOUCHER_RESPONSE_KEY, shopId, id -> {
+            try {
+                return ResponseSnapshot.of(objectMapper.writeValueAsBytes(queryVoucherOfShop(id)));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        }, CACHE_VOUCHER_RESPONSE_TTL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    @Transactional
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        //事务提交后删除店铺的优惠券列表响应
+        cacheInvalidationQueue.invalidate(cacheClient.key(CACHE_VOUCHER_RESPONSE_KEY, voucher.getShopId()));
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -47,5 +108,59 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后再写入redis，回滚时不会留下可以下单的库存
+        afterCommit(() -> {
+            // 保存秒杀库存到redis，下单时在redis中判断和扣减；提交后已有请求按数据库库存加载过时不覆盖
+            stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+            // 缓存秒杀时间，下单时不再查询数据库
+            seckillVoucherCache.put(seckillVoucher);
+        });
+        //事务提交后删除店铺的优惠券列表响应
+        cacheInvalidationQueue.invalidate(cacheClient.key(CACHE_VOUCHER_RESPONSE_KEY, voucher.getShopId()));
+    }
+
+    @Override
+    @Transactional
+    public Result restockSeckillVoucher(Long voucherId, Integer count) {
+        if(count == null || count <= 0){
+            return Result.fail("补充数量必须大于0");
+        }
+        // 增加数据库库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId)
+                .update();
+        if(!success){
+            return Result.fail("秒杀券不存在");
+        }
+        // 事务提交后增加redis库存并清除各节点的售罄标记，提交失败时redis库存不变
+        afterCommit(() -> {
+            // 未加载到redis时，下次下单会按数据库库存加载
+            String stockKey = SECKILL_STOCK_KEY + voucherId;
+            if(Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey))){
+                stringRedisTemplate.opsForValue().increment(stockKey, count);
+            }
+            soldOutRegistry.clear(voucherId);
+        });
+        //事务提交后删除店铺的优惠券列表响应
+        Voucher voucher = getById(voucherId);
+        if(voucher != null){
+            cacheInvalidationQueue.invalidate(cacheClient.key(CACHE_VOUCHER_RESPONSE_KEY, voucher.getShopId()));
+        }
+        return Result.ok();
+    }
+
+    //在当前事务提交后执行，没有事务时立即执行
+    private static void afterCommit(Runnable action){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
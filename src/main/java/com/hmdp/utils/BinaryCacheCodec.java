@@ -0,0 +1,475 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑二进制编解码器
+ * <p>
+ * 按字段名排序依次写入字段值，不写字段名：整数使用zigzag变长编码，字符串使用UTF-8，
+ * 时间使用秒 + 纳秒，可空字段用位图标记null。每个对象前写入字段结构的指纹，
+ * 类的字段变化后旧数据会解码失败，而不是被错位读取。
+ * 只支持由基本类型、包装类型、String、时间、BigDecimal、枚举及这些类型组成的嵌套对象，
+ * 其他类型（如集合）自动改用JSON编码；解码时根据首字节识别格式，因此也能读取旧的JSON数据。
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xB1;
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+    //不支持二进制编码的类型的占位
+    private final Schema UNSUPPORTED = new Schema(null, null, new Property[0], 0, 0);
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = schemaOf(value.getClass());
+        if (schema == null) {
+            return jsonCodec.encode(value);
+        }
+        ByteOutput out = new ByteOutput();
+        out.writeByte(MAGIC);
+        try {
+            out.writeInt(schema.fingerprint);
+            schema.write(out, value);
+        } catch (UnsupportedTypeException e) {
+            //Object字段的运行时类型不支持二进制编码
+            return jsonCodec.encode(value);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decode(bytes, type);
+        }
+        ByteInput in = new ByteInput(bytes, 1);
+        return type.cast(requireSchema(type).checkFingerprint(in).read(in, null));
+    }
+
+    @Override
+    public RedisData decodeLogical(byte[] bytes, Class<?> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decodeLogical(bytes, type);
+        }
+        ByteInput in = new ByteInput(bytes, 1);
+        return (RedisData) requireSchema(RedisData.class).checkFingerprint(in).read(in, type);
+    }
+
+    private Schema requireSchema(Class<?> type) {
+        Schema schema = schemaOf(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("不支持二进制编码的类型：" + type.getName());
+        }
+        return schema;
+    }
+
+    /**
+     * 获取类型的编码结构，不支持的类型返回null
+     */
+    private Schema schemaOf(Class<?> type) {
+        return schemaOf(type, new HashSet<>());
+    }
+
+    private Schema schemaOf(Class<?> type, Set<Class<?>> building) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            //自引用的类型不支持
+            schema = building.add(type) ? buildSchema(type, building) : UNSUPPORTED;
+            building.remove(type);
+            Schema existing = schemas.putIfAbsent(type, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema == UNSUPPORTED ? null : schema;
+    }
+
+    private Schema buildSchema(Class<?> type, Set<Class<?>> building) {
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return UNSUPPORTED;
+        }
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                fields.add(field);
+            }
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+
+        Property[] properties = new Property[fields.size()];
+        int nullableCount = 0;
+        StringBuilder signature = new StringBuilder();
+        for (int i = 0; i < properties.length; i++) {
+            Field field = fields.get(i);
+            Class<?> fieldType = field.getType();
+            Property property = new Property(field, Kind.of(fieldType));
+            if (property.kind == Kind.OBJECT) {
+                if (fieldType.isInterface() || fieldType.isArray() || fieldType.getName().startsWith("java.")) {
+                    return UNSUPPORTED;
+                }
+                property.nested = schemaOf(fieldType, building);
+                if (property.nested == null) {
+                    return UNSUPPORTED;
+                }
+            }
+            try {
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                return UNSUPPORTED;
+            }
+            if (property.nullable) {
+                nullableCount++;
+            }
+            properties[i] = property;
+            signature.append(field.getName()).append(':').append(property.kind);
+            if (property.nested != null) {
+                signature.append('{').append(property.nested.fingerprint).append('}');
+            }
+            signature.append(';');
+        }
+        return new Schema(type, constructor, properties, nullableCount, signature.toString().hashCode());
+    }
+
+    private enum Kind {
+        BOOLEAN, BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE,
+        STRING, LOCAL_DATE_TIME, LOCAL_DATE, BIG_DECIMAL, ENUM,
+        //声明类型确定的嵌套对象
+        OBJECT,
+        //声明为Object的字段，解码时由调用方指定类型，如RedisData.data
+        DYNAMIC;
+
+        static Kind of(Class<?> type) {
+            if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+            if (type == byte.class || type == Byte.class) return BYTE;
+            if (type == short.class || type == Short.class) return SHORT;
+            if (type == char.class || type == Character.class) return CHAR;
+            if (type == int.class || type == Integer.class) return INT;
+            if (type == long.class || type == Long.class) return LONG;
+            if (type == float.class || type == Float.class) return FLOAT;
+            if (type == double.class || type == Double.class) return DOUBLE;
+            if (type == String.class) return STRING;
+            if (type == LocalDateTime.class) return LOCAL_DATE_TIME;
+            if (type == LocalDate.class) return LOCAL_DATE;
+            if (type == BigDecimal.class) return BIG_DECIMAL;
+            if (type.isEnum()) return ENUM;
+            if (type == Object.class) return DYNAMIC;
+            return OBJECT;
+        }
+    }
+
+    private static final class Property {
+        final Field field;
+        final Kind kind;
+        final boolean nullable;
+        //OBJECT类型字段的嵌套结构
+        Schema nested;
+
+        Property(Field field, Kind kind) {
+            this.field = field;
+            this.kind = kind;
+            this.nullable = !field.getType().isPrimitive();
+        }
+    }
+
+    private final class Schema {
+
+        final Class<?> type;
+        final Constructor<?> constructor;
+        final Property[] properties;
+        final int nullableCount;
+        //字段名、类型的指纹
+        final int fingerprint;
+
+        Schema(Class<?> type, Constructor<?> constructor, Property[] properties, int nullableCount, int fingerprint) {
+            this.type = type;
+            this.constructor = constructor;
+            this.properties = properties;
+            this.nullableCount = nullableCount;
+            this.fingerprint = fingerprint;
+        }
+
+        Schema checkFingerprint(ByteInput in) {
+            if (in.readInt() != fingerprint) {
+                throw new IllegalStateException("缓存数据的字段结构与当前类不一致：" + type.getName());
+            }
+            return this;
+        }
+
+        void write(ByteOutput out, Object value) {
+            try {
+                //null位图
+                byte[] nulls = new byte[(nullableCount + 7) >>> 3];
+                int n = 0;
+                for (Property property : properties) {
+                    if (property.nullable) {
+                        if (property.field.get(value) == null) {
+                            nulls[n >>> 3] |= 1 << (n & 7);
+                        }
+                        n++;
+                    }
+                }
+                out.writeBytes(nulls);
+                for (Property property : properties) {
+                    Object fieldValue = property.field.get(value);
+                    if (fieldValue != null) {
+                        writeValue(out, property, fieldValue);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Object read(ByteInput in, Class<?> dynamicType) {
+            try {
+                Object value = constructor.newInstance();
+                byte[] nulls = in.readBytes((nullableCount + 7) >>> 3);
+                int n = 0;
+                for (Property property : properties) {
+                    if (property.nullable) {
+                        boolean isNull = (nulls[n >>> 3] & (1 << (n & 7))) != 0;
+                        n++;
+                        if (isNull) {
+                            continue;
+                        }
+                    }
+                    Object fieldValue = readValue(in, property, dynamicType);
+                    if (fieldValue != null) {
+                        property.field.set(value, fieldValue);
+                    }
+                }
+                return value;
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void writeValue(ByteOutput out, Property property, Object value) {
+            switch (property.kind) {
+                case BOOLEAN: out.writeByte((Boolean) value ? 1 : 0); break;
+                case BYTE: out.writeByte((Byte) value); break;
+                case SHORT: out.writeVarLong((Short) value); break;
+                case CHAR: out.writeVarLong((Character) value); break;
+                case INT: out.writeVarLong((Integer) value); break;
+                case LONG: out.writeVarLong((Long) value); break;
+                case FLOAT: out.writeInt(Float.floatToIntBits((Float) value)); break;
+                case DOUBLE: out.writeLong(Double.doubleToLongBits((Double) value)); break;
+                case STRING: out.writeString((String) value); break;
+                case LOCAL_DATE_TIME:
+                    LocalDateTime time = (LocalDateTime) value;
+                    out.writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+                    out.writeVarLong(time.getNano());
+                    break;
+                case LOCAL_DATE: out.writeVarLong(((LocalDate) value).toEpochDay()); break;
+                case BIG_DECIMAL: out.writeString(value.toString()); break;
+                case ENUM: out.writeString(((Enum<?>) value).name()); break;
+                case OBJECT: property.nested.write(out, value); break;
+                case DYNAMIC:
+                    //写入长度，解码时未指定类型可以直接跳过
+                    Schema schema = schemaOf(value.getClass());
+                    if (schema == null) {
+                        throw new UnsupportedTypeException();
+                    }
+                    ByteOutput nested = new ByteOutput();
+                    nested.writeInt(schema.fingerprint);
+                    schema.write(nested, value);
+                    out.writeVarLong(nested.size());
+                    out.writeBytes(nested.buffer(), nested.size());
+                    break;
+                default:
+                    throw new IllegalStateException(property.kind.name());
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readValue(ByteInput in, Property property, Class<?> dynamicType) {
+            switch (property.kind) {
+                case BOOLEAN: return in.readByte() != 0;
+                case BYTE: return in.readByte();
+                case SHORT: return (short) in.readVarLong();
+                case CHAR: return (char) in.readVarLong();
+                case INT: return (int) in.readVarLong();
+                case LONG: return in.readVarLong();
+                case FLOAT: return Float.intBitsToFloat(in.readInt());
+                case DOUBLE: return Double.longBitsToDouble(in.readLong());
+                case STRING: return in.readString();
+                case LOCAL_DATE_TIME:
+                    long seconds = in.readVarLong();
+                    int nanos = (int) in.readVarLong();
+                    return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+                case LOCAL_DATE: return LocalDate.ofEpochDay(in.readVarLong());
+                case BIG_DECIMAL: return new BigDecimal(in.readString());
+                case ENUM: return Enum.valueOf((Class) property.field.getType(), in.readString());
+                case OBJECT: return property.nested.read(in, null);
+                case DYNAMIC:
+                    int length = (int) in.readVarLong();
+                    if (dynamicType == null) {
+                        in.skip(length);
+                        return null;
+                    }
+                    ByteInput nested = new ByteInput(in.readBytes(length), 0);
+                    return requireSchema(dynamicType).checkFingerprint(nested).read(nested, null);
+                default:
+                    throw new IllegalStateException(property.kind.name());
+            }
+        }
+    }
+
+    private static final class UnsupportedTypeException extends RuntimeException {
+        UnsupportedTypeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class ByteOutput {
+        private byte[] buf = new byte[128];
+        private int count;
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeBytes(bytes, bytes.length);
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buf, count, length);
+            count += length;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[count++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[count++] = (byte) (v >>> shift);
+            }
+        }
+
+        //zigzag变长编码，小的正负数都只占1~2个字节
+        void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[count++] = (byte) zigzag;
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        int size() {
+            return count;
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensure(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + n));
+            }
+        }
+    }
+
+    private static final class ByteInput {
+        private final byte[] buf;
+        private int pos;
+
+        ByteInput(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        void skip(int length) {
+            pos += length;
+        }
+
+        int readInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
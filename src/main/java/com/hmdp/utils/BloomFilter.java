@@ -0,0 +1,112 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于内存位图的布隆过滤器，用于拦截不存在的id，防止缓存穿透
+ * <p>
+ * 不存在的元素可能被误判为存在（误判率由容量和预期误判率决定），存在的元素一定不会被误判为不存在。
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+
+    //统计信息
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预期元素数量
+     * @param fpp 预期误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        //按64位对齐
+        this.bitSize = Math.max(64, (m + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitSize / 64));
+    }
+
+    public void put(Object id) {
+        long[] hash = MurmurHash.hash128(String.valueOf(id));
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(hash, i);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(Object id) {
+        checks.increment();
+        long[] hash = MurmurHash.hash128(String.valueOf(id));
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(hash, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次误判：过滤器放行，但数据库中并不存在
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * 按当前插入数量估算的理论误判率
+     */
+    public double expectedFpp() {
+        double exponent = -(double) hashCount * insertions.sum() / bitSize;
+        return Math.pow(1 - Math.exp(exponent), hashCount);
+    }
+
+    /**
+     * 实际观测到的误判率 = 误判次数 / (误判次数 + 拦截次数)
+     */
+    public double observedFpp() {
+        long fp = falsePositives.sum();
+        long total = fp + rejected.sum();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bitSize", bitSize);
+        stats.put("hashCount", hashCount);
+        stats.put("insertions", insertions.sum());
+        stats.put("checks", checks.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("falsePositives", falsePositives.sum());
+        stats.put("expectedFpp", expectedFpp());
+        stats.put("observedFpp", observedFpp());
+        return stats;
+    }
+
+    //双重哈希：h1 + i * h2
+    private long index(long[] hash, int i) {
+        long combined = hash[0] + i * hash[1];
+        return (combined & Long.MAX_VALUE) % bitSize;
+    }
+}
@@ -1,128 +1,1143 @@
 package com.hmdp.utils;
 
+import com.hmdp.dto.ResponseSnapshot;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.CacheMetrics.*;
 import static com.hmdp.utils.RedisConstants.*;
 
 @Slf4j
 @Component
 public class CacheClient {
 
+    //空值标记，缓存数据库中不存在的数据
+    private static final byte[] NULL_VALUE = "null".getBytes(StandardCharsets.UTF_8);
+
     private final StringRedisTemplate stringRedisTemplate;
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    //缓存值按字节读写，格式由codec决定
+    private final RedisTemplate<String, byte[]> byteRedisTemplate;
+    private final CacheCodec codec;
+    //按key前缀统计的命中率、重建次数及redis、数据库耗时
+    private final CacheMetrics metrics;
+    //共享的重建线程池，按key去重，同一节点同一个key只有一个重建任务去抢分布式锁
+    private final CacheRebuildExecutor rebuildExecutor;
+    //异步查询使用的lettuce异步命令，以及执行数据库查询的线程池
+    private final RedisClusterAsyncCommands<byte[], byte[]> asyncRedis;
+    private final ExecutorService asyncLoadExecutor = new ThreadPoolExecutor(
+            CACHE_ASYNC_LOAD_POOL_SIZE, CACHE_ASYNC_LOAD_POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(CACHE_ASYNC_LOAD_QUEUE_CAPACITY),
+            r -> {
+                Thread thread = new Thread(r, "cache-async-load");
+                thread.setDaemon(true);
+                return thread;
+            });
+    //redis返回后的处理（解码、写本地缓存、提交数据库查询），不占用lettuce的事件循环线程；只做轻量工作，队列不设上限
+    private final ExecutorService asyncCallbackExecutor = Executors.newFixedThreadPool(CACHE_ASYNC_CALLBACK_POOL_SIZE, r -> {
+        Thread thread = new Thread(r, "cache-async-callback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //本地一级缓存，保存已反序列化的对象，按容量和TTL淘汰
+    private final LRUCache<String, RedisData> localCache =
+            CacheUtil.newLRUCache(CACHE_LOCAL_MAX_SIZE, TimeUnit.SECONDS.toMillis(CACHE_LOCAL_TTL));
+    //开启了本地缓存的key前缀
+    private final Set<String> localCachePrefixes = ConcurrentHashMap.newKeySet();
+    //按key前缀注册的布隆过滤器
+    private final Map<String, BloomFilter> bloomFilters = new ConcurrentHashMap<>();
+    //正在重建的布隆过滤器，重建期间新增的id同时写入，替换后不会丢失
+    private final Map<String, BloomFilter> buildingBloomFilters = new ConcurrentHashMap<>();
+    //合并同一节点内对同一个key的并发加载
+    private final SingleFlight singleFlight = new SingleFlight();
+    //本节点的热点key探测，热点key即使所在前缀未开启本地缓存，也会短时间写入本地缓存
+    private final HotKeyDetector hotKeyDetector = new HotKeyDetector(CACHE_HOT_KEY_SKETCH_WIDTH, CACHE_HOT_KEY_SKETCH_DEPTH,
+            CACHE_HOT_KEY_SAMPLE_RATE, CACHE_HOT_KEY_THRESHOLD, CACHE_HOT_KEY_TOP_K, TimeUnit.SECONDS.toMillis(CACHE_HOT_KEY_WINDOW));
+    //开启了版本号的key前缀及其当前版本号，版本号保存在redis，本地缓存并通过广播刷新
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    //开启了提前刷新的key前缀及其beta系数
+    private final Map<String, Double> earlyRefreshBetas = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisTemplate<String, byte[]> byteRedisTemplate, CacheCodec codec,
+                       CacheRebuildExecutor rebuildExecutor, MeterRegistry meterRegistry,
+                       RedisClusterAsyncCommands<byte[], byte[]> asyncRedisCommands) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.byteRedisTemplate = byteRedisTemplate;
+        this.codec = codec;
+        this.rebuildExecutor = rebuildExecutor;
+        this.asyncRedis = asyncRedisCommands;
+        this.metrics = new CacheMetrics(meterRegistry);
+    }
+
+    /**
+     * 为指定key前缀开启本地一级缓存
+     * @param keyPrefix key前缀
+     */
+    public void enableLocalCache(String keyPrefix){
+        localCachePrefixes.add(keyPrefix);
+    }
+
+    /**
+     * 为指定key前缀开启逻辑过期数据的提前刷新
+     * @param keyPrefix key前缀
+     * @param beta 提前系数，越大越早刷新，1.0为默认值
+     */
+    public void enableEarlyRefresh(String keyPrefix, double beta){
+        earlyRefreshBetas.put(keyPrefix, beta);
+    }
+
+    /**
+     * 为指定key前缀开启版本号：key中带上版本号，版本号加一即可让该前缀下的全部缓存失效，
+     * 旧版本的key不再被访问，按TTL自然过期
+     * @param keyPrefix key前缀
+     */
+    public void enableNamespace(String keyPrefix){
+        Namespace namespace = new Namespace();
+        namespace.refresh(loadGeneration(keyPrefix));
+        namespaces.put(keyPrefix, namespace);
+    }
+
+    /**
+     * 构造缓存key，开启了版本号的前缀会带上当前版本号
+     * @return 如 cache:shop:1，版本号为3时为 cache:shop:v3:1
+     */
+    public String key(String keyPrefix, Object id){
+        return namespace(keyPrefix) + id;
+    }
+
+    /**
+     * 带版本号的key前缀，版本号为0时与原前缀相同，兼容开启版本号之前写入的数据
+     */
+    public String namespace(String keyPrefix){
+        Namespace namespace = namespaces.get(keyPrefix);
+        if(namespace == null){
+            return keyPrefix;
+        }
+        //广播可能丢失，定期从redis重新读取
+        if(namespace.isStale()){
+            namespace.touch();
+            try {
+                refreshNamespace(keyPrefix, namespace, loadGeneration(keyPrefix));
+            } catch (RuntimeException e) {
+                log.warn("读取缓存版本号失败，继续使用本地版本号，keyPrefix={}", keyPrefix, e);
+            }
+        }
+        long generation = namespace.generation.get();
+        return generation == 0 ? keyPrefix : keyPrefix + "v" + generation + ":";
+    }
+
+    /**
+     * 版本号加一，使该前缀下的全部缓存立即失效，并通知其他节点
+     * @return 新的版本号
+     */
+    public long bumpNamespace(String keyPrefix){
+        Long generation = stringRedisTemplate.opsForValue().increment(CACHE_NAMESPACE_KEY + keyPrefix);
+        long next = generation == null ? 0 : generation;
+        Namespace namespace = namespaces.get(keyPrefix);
+        if(namespace != null){
+            refreshNamespace(keyPrefix, namespace, next);
+        }
+        stringRedisTemplate.convertAndSend(CACHE_NAMESPACE_CHANNEL, keyPrefix);
+        return next;
+    }
+
+    /**
+     * 处理其他节点广播的版本号变化，由版本号广播调用
+     * @param keyPrefix key前缀
+     */
+    public void onNamespaceBump(String keyPrefix){
+        Namespace namespace = namespaces.get(keyPrefix);
+        if(namespace != null){
+            refreshNamespace(keyPrefix, namespace, loadGeneration(keyPrefix));
+        }
+    }
+
+    /**
+     * 注册版本号变化的监听，用于清理基于该前缀数据构建的本地快照等
+     * @param keyPrefix 已开启版本号的key前缀
+     * @param listener 版本号变大后在本节点调用
+     */
+    public void addNamespaceListener(String keyPrefix, Runnable listener){
+        Namespace namespace = namespaces.get(keyPrefix);
+        if(namespace == null){
+            throw new IllegalStateException("key前缀未开启版本号：" + keyPrefix);
+        }
+        namespace.listeners.add(listener);
+    }
+
+    private void refreshNamespace(String keyPrefix, Namespace namespace, long generation){
+        if(!namespace.refresh(generation)){
+            return;
+        }
+        for (Runnable listener : namespace.listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("缓存版本号监听执行失败，keyPrefix={}", keyPrefix, e);
+            }
+        }
+    }
+
+    public boolean isNamespaceEnabled(String keyPrefix){
+        return namespaces.containsKey(keyPrefix);
+    }
+
+    public Map<String, Long> namespaceGenerations(){
+        Map<String, Long> generations = new LinkedHashMap<>();
+        namespaces.forEach((keyPrefix, namespace) -> generations.put(keyPrefix, namespace.generation.get()));
+        return generations;
+    }
+
+    private long loadGeneration(String keyPrefix){
+        String generation = stringRedisTemplate.opsForValue().get(CACHE_NAMESPACE_KEY + keyPrefix);
+        return generation == null ? 0 : Long.parseLong(generation);
+    }
+
+    //key属于开启了版本号的前缀时，逻辑过期数据也需要设置TTL，保证旧版本的key最终被清理
+    private boolean isVersioned(String key){
+        for (String keyPrefix : namespaces.keySet()) {
+            if(key.startsWith(keyPrefix)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Namespace {
+        private final AtomicLong generation = new AtomicLong();
+        private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+        private volatile long loadedAt;
+
+        //版本号只增不减，避免乱序的广播把版本号改回旧值；返回版本号是否变大
+        private boolean refresh(long loaded){
+            long previous = generation.getAndAccumulate(loaded, Math::max);
+            touch();
+            return loaded > previous;
+        }
+
+        private void touch(){
+            loadedAt = System.currentTimeMillis();
+        }
+
+        private boolean isStale(){
+            return System.currentTimeMillis() - loadedAt > TimeUnit.SECONDS.toMillis(CACHE_NAMESPACE_REFRESH_TTL);
+        }
+    }
+
+    /**
+     * 重建布隆过滤器：先登记新的过滤器，装入期间新增的id同时写入新旧过滤器，装入完成后替换旧的过滤器
+     * @param keyPrefix key前缀
+     * @param bloomFilter 新的空过滤器
+     * @param loader 把全部存在的id装入过滤器
+     */
+    public void rebuildBloomFilter(String keyPrefix, BloomFilter bloomFilter, Consumer<BloomFilter> loader){
+        buildingBloomFilters.put(keyPrefix, bloomFilter);
+        try {
+            loader.accept(bloomFilter);
+            bloomFilters.put(keyPrefix, bloomFilter);
+        } finally {
+            buildingBloomFilters.remove(keyPrefix, bloomFilter);
+        }
+    }
+
+    /**
+     * 新增数据后写入布隆过滤器，并通知其他节点
+     * @param keyPrefix key前缀
+     * @param id 新增数据的id
+     */
+    public <ID> void addToBloomFilter(String keyPrefix, ID id){
+        //先写正在重建的过滤器，再写当前的过滤器：读不到重建中的过滤器时，它要么还没开始装入，要么已经替换完成
+        BloomFilter building = buildingBloomFilters.get(keyPrefix);
+        if(building != null){
+            building.put(id);
+        }
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if(bloomFilter != null){
+            bloomFilter.put(id);
+        }
+        if(building != null || bloomFilter != null){
+            stringRedisTemplate.convertAndSend(CACHE_BLOOM_ADD_CHANNEL, keyPrefix + id);
+        }
+    }
+
+    /**
+     * 处理其他节点广播的新增id，由布隆过滤器广播调用
+     * @param key 缓存key（前缀 + id）
+     */
+    public void onBloomFilterAdd(String key){
+        buildingBloomFilters.forEach((keyPrefix, bloomFilter) -> {
+            if(key.startsWith(keyPrefix)){
+                bloomFilter.put(key.substring(keyPrefix.length()));
+            }
+        });
+        bloomFilters.forEach((keyPrefix, bloomFilter) -> {
+            if(key.startsWith(keyPrefix)){
+                bloomFilter.put(key.substring(keyPrefix.length()));
+            }
+        });
+    }
+
+    /**
+     * 本节点当前的热点key
+     * @return key到一个窗口内估计访问量的映射，按访问量降序
+     */
+    public Map<String, Long> hotKeys(){
+        return hotKeyDetector.topKeys();
+    }
+
+    public Map<String, Map<String, Object>> bloomFilterStats(){
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        bloomFilters.forEach((keyPrefix, bloomFilter) -> stats.put(keyPrefix, bloomFilter.stats()));
+        return stats;
+    }
+
+    /**
+     * 删除缓存，并通知所有节点清理本地缓存
+     * @param key 缓存key
+     */
+    public void delete(String key){
+        stringRedisTemplate.delete(key);
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 清理本节点的本地缓存，由失效广播调用
+     * @param key 缓存key
+     */
+    public void evictLocal(String key){
+        localCache.remove(key);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        byteRedisTemplate.opsForValue().set(key, codec.encode(value), time, unit);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit){
-        //设置逻辑过期
+        setWithLogicalExpire(key, value, time, unit, null);
+    }
+
+    /**
+     * 写入逻辑过期数据，并记录重建耗时，用于提前刷新
+     * @param rebuildCost 重建耗时（毫秒）
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long rebuildCost){
+        //设置逻辑过期，数据库中不存在的数据只保留较短时间
+        long seconds = value == null ? TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL) : unit.toSeconds(time);
         RedisData redisData = new RedisData();
         redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(seconds));
+        redisData.setRebuildCost(rebuildCost);
         //写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData), time, unit);
+        Long ttl = physicalTtl(key, value, seconds);
+        if(ttl == null){
+            //不设置TTL，过期后仍可返回旧数据并由后台重建
+            byteRedisTemplate.opsForValue().set(key, codec.encode(redisData));
+        } else {
+            byteRedisTemplate.opsForValue().set(key, codec.encode(redisData), ttl, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 逻辑过期数据的实际TTL（秒），null表示不设置：
+     * 空值与逻辑过期时间一起删除，过期后重新查询数据库；
+     * 开启了版本号的前缀在逻辑过期后再保留一段时间，保证旧版本的key最终被清理
+     */
+    private Long physicalTtl(String key, Object value, long logicalSeconds){
+        if(value == null){
+            return logicalSeconds;
+        }
+        if(isVersioned(key)){
+            return logicalSeconds + TimeUnit.MINUTES.toSeconds(CACHE_NAMESPACE_GRACE_TTL);
+        }
+        return null;
+    }
+
+    /**
+     * 通过管道批量写入逻辑过期数据
+     * @param values id到数据的映射，数据为null时同样写入，表示数据库中不存在，只保留CACHE_NULL_TTL
+     * @param rebuildCost 重建耗时（毫秒），可为null
+     */
+    public <R, ID> void setBatchWithLogicalExpire(String keyPrefix, Map<ID, R> values, Long time, TimeUnit unit, Long rebuildCost){
+        setBatchWithLogicalExpire(keyPrefix, values, time, unit, rebuildCost, RedisStringCommands.SetOption.upsert());
+    }
+
+    /**
+     * 通过管道批量写入逻辑过期数据，只写入不存在的key（SET NX）：
+     * 用于预热等批量加载，读取数据库之后已被其它请求写入的新数据不会被覆盖
+     * @param rebuildCost 重建耗时（毫秒），可为null
+     */
+    public <R, ID> void setBatchWithLogicalExpireIfAbsent(String keyPrefix, Map<ID, R> values, Long time, TimeUnit unit, Long rebuildCost){
+        setBatchWithLogicalExpire(keyPrefix, values, time, unit, rebuildCost, RedisStringCommands.SetOption.ifAbsent());
+    }
+
+    private <R, ID> void setBatchWithLogicalExpire(String keyPrefix, Map<ID, R> values, Long time, TimeUnit unit, Long rebuildCost,
+                                                   RedisStringCommands.SetOption option){
+        if(values.isEmpty()){
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        String namespace = namespace(keyPrefix);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> {
+                String key = namespace + id;
+                long seconds = value == null ? TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL) : unit.toSeconds(time);
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                redisData.setExpireTime(now.plusSeconds(seconds));
+                redisData.setRebuildCost(rebuildCost);
+                Long ttl = physicalTtl(key, value, seconds);
+                connection.set(rawKey(key), codec.encode(redisData),
+                        ttl == null ? Expiration.persistent() : Expiration.seconds(ttl), option);
+            });
+            return null;
+        });
     }
 
 
     public <R, ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
-        String key = keyPrefix + id;
+        String key = key(keyPrefix, id);
+        boolean useLocal = useLocal(keyPrefix, key);
+
+        //布隆过滤器判断id不存在，直接返回，不访问redis和数据库
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(id)){
+            return null;
+        }
+
+        //查询缓存（本地缓存 + redis）
+        RedisData cached = getPassThrough(keyPrefix, key, type, useLocal);
+        if(cached != null){
+            metrics.increment(keyPrefix, cached.getData() == null ? NULL_HIT : HIT);
+            return type.cast(cached.getData());
+        }
+        metrics.increment(keyPrefix, MISS);
+
+        //未命中，同一节点只由一个线程查询数据库，其他线程等待并共享结果
+        return singleFlight.execute(key, () -> loadAndCache(keyPrefix, key, id, dbFallback, bloomFilter, useLocal, time, unit));
+    }
+
+    /**
+     * 互斥锁方案：缓存未命中时，同一节点只有一个线程去竞争分布式锁并重建，其他线程等待它的结果；
+     * 竞争失败的节点休眠后重新查询缓存，直到其他节点重建完成或自己获取到锁
+     */
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
+        String key = key(keyPrefix, id);
+        boolean useLocal = useLocal(keyPrefix, key);
+
+        //布隆过滤器判断id不存在，直接返回
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(id)){
+            return null;
+        }
+
+        RedisData cached = getPassThrough(keyPrefix, key, type, useLocal);
+        if(cached != null){
+            metrics.increment(keyPrefix, cached.getData() == null ? NULL_HIT : HIT);
+            return type.cast(cached.getData());
+        }
+        metrics.increment(keyPrefix, MISS);
+
+        return singleFlight.execute(key, () -> {
+            String lockKey = LOCK_SHOP_KEY + id;
+            while (true) {
+                if(tryLock(lockKey)){
+                    try {
+                        //获取锁后再次检查缓存，其他节点可能已经重建完成
+                        RedisData rebuilt = getPassThrough(keyPrefix, key, type, useLocal);
+                        if(rebuilt != null){
+                            return type.cast(rebuilt.getData());
+                        }
+                        return loadAndCache(keyPrefix, key, id, dbFallback, bloomFilter, useLocal, time, unit);
+                    } finally {
+                        unLock(lockKey);
+                    }
+                }
+                //获取锁失败，休眠后重新查询缓存
+                metrics.increment(keyPrefix, LOCK_CONTENDED);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+                RedisData rebuilt = getPassThrough(keyPrefix, key, type, useLocal);
+                if(rebuilt != null){
+                    return type.cast(rebuilt.getData());
+                }
+            }
+        });
+    }
+
+    /**
+     * 查询本地缓存和redis
+     * @return null表示未命中；data为null表示缓存的是空值
+     */
+    private <R> RedisData getPassThrough(String keyPrefix, String key, Class<R> type, boolean useLocal){
+        //先查本地缓存
+        if(useLocal){
+            RedisData local = localCache.get(key, false);
+            if(local != null){
+                return local;
+            }
+        }
 
         //从redis查询商铺缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = metrics.redis(keyPrefix, () -> byteRedisTemplate.opsForValue().get(key));
         //判断缓存是否命中
-        if (StrUtil.isNotBlank(Json)){
-            //命中，返回商铺信息
-            //判断是否是空值
-            if(Json == null){
-                //是空
-                return null;
-            }
-            //不是空
-            return JSONUtil.toBean(Json, type);
+        if (!isNotEmpty(bytes)){
+            return null;
+        }
+        RedisData cached = new RedisData();
+        //判断是否是空值
+        if(Arrays.equals(bytes, NULL_VALUE)){
+            return cached;
+        }
+        //不是空
+        R r = decode(key, bytes, type);
+        if(r == null){
+            return null;
         }
+        cached.setData(r);
+        if(useLocal){
+            putLocal(keyPrefix, key, cached);
+        }
+        return cached;
+    }
 
+    //查询数据库并写入缓存，不存在时写入空值
+    private <R, ID> R loadAndCache(String keyPrefix, String key, ID id, Function<ID, R> dbFallback,
+                                   BloomFilter bloomFilter, boolean useLocal, Long time, TimeUnit unit){
+        metrics.increment(keyPrefix, REBUILD_STARTED);
         //根据r查询数据库
-        R r = dbFallback.apply(id);
+        R r;
+        try {
+            r = metrics.db(keyPrefix, () -> dbFallback.apply(id));
+        } catch (RuntimeException e) {
+            metrics.increment(keyPrefix, REBUILD_FAILED);
+            throw e;
+        }
         //判断商铺是否存在
         //不存在，返回404
         if(r == null){
+            //布隆过滤器放行但数据不存在，记录误判
+            if(bloomFilter != null){
+                bloomFilter.recordFalsePositive();
+            }
             //将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "null", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            metrics.redis(keyPrefix, () -> byteRedisTemplate.opsForValue().set(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES));
             //返回错误信息
             return null;
 
         }
         //存在，将商铺数据写入redis
-//        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(r), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        this.set(key, r, time, unit);
+        metrics.redis(keyPrefix, () -> this.set(key, r, time, unit));
+        if(useLocal){
+            putLocal(keyPrefix, key, r);
+        }
 
         return r;
     }
 
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
-        String key = keyPrefix + id;
+        String key = key(keyPrefix, id);
+        boolean useLocal = useLocal(keyPrefix, key);
 
-        //从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //判断缓存是否命中
-        if (StrUtil.isBlank(json)){
-            //命中，返回商铺信息
+        //布隆过滤器判断id不存在，直接返回
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(id)){
             return null;
         }
-        //命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //判断是否过期
-        if(expireTime.isAfter(LocalDateTime.now())){
+
+        //先查本地缓存，未逻辑过期则直接返回
+        RedisData redisData = useLocal ? getLocalLogical(key) : null;
+        if(redisData == null){
+            //从redis查询商铺缓存
+            byte[] bytes = metrics.redis(keyPrefix, () -> byteRedisTemplate.opsForValue().get(key));
+            //判断缓存是否命中
+            if (!isNotEmpty(bytes)){
+                //未命中（未预热、已删除或版本号已变化），同一节点只由一个线程查询数据库并写入
+                metrics.increment(keyPrefix, MISS);
+                return singleFlight.execute(key,
+                        () -> loadLogical(keyPrefix, key, id, dbFallback, bloomFilter, useLocal, time, unit));
+            }
+            redisData = readLogical(keyPrefix, key, bytes, type, useLocal);
+        }
+        return serveLogical(keyPrefix, key, id, redisData, type, dbFallback, time, unit);
+    }
+
+    //查询数据库并写入逻辑过期数据，不存在时写入短时间的空值
+    private <R, ID> R loadLogical(String keyPrefix, String key, ID id, Function<ID, R> dbFallback,
+                                  BloomFilter bloomFilter, boolean useLocal, Long time, TimeUnit unit){
+        metrics.increment(keyPrefix, REBUILD_STARTED);
+        long begin = System.currentTimeMillis();
+        R r;
+        try {
+            r = metrics.db(keyPrefix, () -> dbFallback.apply(id));
+        } catch (RuntimeException e) {
+            metrics.increment(keyPrefix, REBUILD_FAILED);
+            throw e;
+        }
+        long rebuildCost = System.currentTimeMillis() - begin;
+        if(r == null && bloomFilter != null){
+            //布隆过滤器放行但数据不存在，记录误判
+            bloomFilter.recordFalsePositive();
+        }
+        metrics.redis(keyPrefix, () -> setWithLogicalExpire(key, r, time, unit, rebuildCost));
+        if(useLocal && r != null){
+            RedisData redisData = new RedisData();
+            redisData.setData(r);
+            redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+            redisData.setRebuildCost(rebuildCost);
+            putLocal(keyPrefix, key, redisData);
+        }
+        return r;
+    }
+
+    //本地缓存中未逻辑过期的数据
+    private RedisData getLocalLogical(String key){
+        RedisData local = localCache.get(key, false);
+        if(local != null && local.getExpireTime() != null && local.getExpireTime().isAfter(LocalDateTime.now())){
+            return local;
+        }
+        return null;
+    }
+
+    //反序列化redis中的逻辑过期数据，data直接解码为目标类型，未过期时写入本地缓存
+    private RedisData readLogical(String keyPrefix, String key, byte[] bytes, Class<?> type, boolean useLocal){
+        RedisData redisData = decodeLogical(key, bytes, type);
+        if(redisData == null){
+            //数据无法解码（如结构已变化），按已过期处理，重建后即可读取
+            redisData = new RedisData();
+            redisData.setExpireTime(LocalDateTime.MIN);
+        } else if(useLocal && redisData.getExpireTime().isAfter(LocalDateTime.now())){
+            //未过期，写入本地缓存
+            putLocal(keyPrefix, key, redisData);
+        }
+        return redisData;
+    }
+
+    //返回逻辑过期数据，需要时提交后台重建
+    private <R, ID> R serveLogical(String keyPrefix, String key, ID id, RedisData redisData,
+                                   Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
+        R r = type.cast(redisData.getData());
+
+        //判断是否需要重建：已过期，或开启了提前刷新且命中了提前刷新的概率
+        boolean expired = !redisData.getExpireTime().isAfter(LocalDateTime.now());
+        metrics.increment(keyPrefix, expired ? STALE : r == null ? NULL_HIT : HIT);
+        if(!needRebuild(keyPrefix, redisData)){
             //未过期，直接返回店铺信息
             return r;
         }
 
-        //已过期，需要缓存重建
-        //获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        //判断是否取锁成功
-        if(tryLock(lockKey)){
-            //成功。开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() ->{
+        //已过期，需要缓存重建，交给重建线程池；本节点已有同一个key在重建时不重复提交
+        rebuildExecutor.submit(key, () -> {
+            //获取互斥锁，失败说明其他节点正在重建
+            String lockKey = LOCK_SHOP_KEY + id;
+            if(!tryLock(lockKey)){
+                metrics.increment(keyPrefix, LOCK_CONTENDED);
+                return;
+            }
+            metrics.increment(keyPrefix, REBUILD_STARTED);
+            try {
+                //重建缓存
+                //查询数据库，并记录重建耗时
+                long begin = System.currentTimeMillis();
+                R r1 = metrics.db(keyPrefix, () -> dbFallback.apply(id));
+                long rebuildCost = System.currentTimeMillis() - begin;
+                //写入redis
+                metrics.redis(keyPrefix, () -> this.setWithLogicalExpire(key, r1, time, unit, rebuildCost));
+                //本节点的旧数据已不再需要
+                evictLocal(key);
+            } catch (RuntimeException e) {
+                metrics.increment(keyPrefix, REBUILD_FAILED);
+                throw e;
+            } finally {
+                //释放锁
+                unLock(lockKey);
+            }
+        });
+
+        //返回过期的商铺信息
+        return r;
+    }
+
+    /**
+     * 查询已序列化的响应：本地缓存 → redis → loader生成后写回，
+     * 命中时不做任何反序列化和序列化，直接返回最终的响应字节
+     * @param loader 未命中时生成响应，在异步加载线程池中执行；返回null表示不缓存
+     */
+    public <ID> CompletableFuture<ResponseSnapshot> queryResponseAsync(
+            String keyPrefix, ID id, Function<ID, ResponseSnapshot> loader, Long time, TimeUnit unit){
+        String key = key(keyPrefix, id);
+        boolean useLocal = useLocal(keyPrefix, key);
+
+        //先查本地缓存
+        if(useLocal){
+            RedisData local = localCache.get(key, false);
+            if(local != null){
+                metrics.increment(keyPrefix, HIT);
+                return CompletableFuture.completedFuture((ResponseSnapshot) local.getData());
+            }
+        }
+
+        return asyncGet(keyPrefix, key).thenComposeAsync(bytes -> {
+            ResponseSnapshot snapshot = decodeResponse(key, bytes);
+            if(snapshot != null){
+                metrics.increment(keyPrefix, HIT);
+                if(useLocal){
+                    putLocal(keyPrefix, key, snapshot);
+                }
+                return CompletableFuture.completedFuture(snapshot);
+            }
+            //未命中，同一节点同一个key只生成一次
+            metrics.increment(keyPrefix, MISS);
+            return singleFlight.executeAsync(key, () -> supplyLoad(() -> metrics.db(keyPrefix, () -> loader.apply(id)))
+                    .thenCompose(s -> {
+                        if(s == null){
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        if(useLocal){
+                            putLocal(keyPrefix, key, s);
+                        }
+                        return asyncSet(keyPrefix, key, s.toBytes(), unit.toMillis(time)).thenApply(ok -> s);
+                    }));
+        }, asyncCallbackExecutor);
+    }
+
+    private ResponseSnapshot decodeResponse(String key, byte[] bytes){
+        if(!isNotEmpty(bytes)){
+            return null;
+        }
+        try {
+            return ResponseSnapshot.fromBytes(bytes);
+        } catch (RuntimeException e) {
+            log.warn("响应缓存格式错误，按未命中处理，key={}", key, e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<byte[]> asyncGet(String keyPrefix, String key){
+        return metrics.redisAsync(keyPrefix, () -> asyncRedis.get(key.getBytes(StandardCharsets.UTF_8))).toCompletableFuture();
+    }
+
+    private CompletableFuture<String> asyncSet(String keyPrefix, String key, byte[] value, long ttlMillis){
+        return metrics.redisAsync(keyPrefix,
+                () -> asyncRedis.set(key.getBytes(StandardCharsets.UTF_8), value, SetArgs.Builder.px(ttlMillis))).toCompletableFuture();
+    }
+
+    /**
+     * 在异步加载线程池中查询数据库；线程池已满时退化为在当前线程（异步回调线程）中同步查询，
+     * 请求变慢但不会失败
+     */
+    private <T> CompletableFuture<T> supplyLoad(Supplier<T> supplier){
+        try {
+            return CompletableFuture.supplyAsync(supplier, asyncLoadExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("缓存异步加载线程池已满，在当前线程中查询");
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 判断逻辑过期数据是否需要重建
+     * <p>
+     * 已过期时一定重建；开启提前刷新后按XFetch算法在过期前随机触发：
+     * now - rebuildCost * beta * ln(random) >= expireTime，
+     * 重建越慢、越接近过期，触发的概率越大，从而把各节点的重建分散开。
+     */
+    private boolean needRebuild(String keyPrefix, RedisData redisData){
+        //先判断是否已过期，无法解码的数据过期时间为LocalDateTime.MIN，直接计算时间差会溢出
+        LocalDateTime now = LocalDateTime.now();
+        if(!redisData.getExpireTime().isAfter(now)){
+            return true;
+        }
+        long remaining = Duration.between(now, redisData.getExpireTime()).toMillis();
+        Double beta = earlyRefreshBetas.get(keyPrefix);
+        Long rebuildCost = redisData.getRebuildCost();
+        if(beta == null || rebuildCost == null || rebuildCost <= 0){
+            return false;
+        }
+        return rebuildCost * beta * -Math.log(ThreadLocalRandom.current().nextDouble()) >= remaining;
+    }
+
+    /**
+     * 批量查询（缓存穿透方案）：一次MGET查询redis，未命中的id一次查询数据库，再通过管道批量写回
+     * @param dbFallback 根据id集合批量查询数据库，返回id到数据的映射，不存在的id不放入映射
+     * @return id到数据的映射，按传入id的顺序排列，不存在的id不包含在内
+     */
+    public <R, ID> Map<ID, R> queryBatch(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit){
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        Set<ID> distinctIds = new LinkedHashSet<>(ids);
+        //开启了本地缓存或为热点的id
+        Set<ID> localIds = new HashSet<>();
+        Map<ID, R> found = new HashMap<>();
+
+        //布隆过滤器拦截、本地缓存命中的id不再访问redis
+        List<ID> redisIds = new ArrayList<>();
+        int hits = 0, nullHits = 0;
+        for (ID id : distinctIds) {
+            if(bloomFilter != null && !bloomFilter.mightContain(id)){
+                continue;
+            }
+            if(useLocal(keyPrefix, key(keyPrefix, id))){
+                localIds.add(id);
+                RedisData local = localCache.get(key(keyPrefix, id), false);
+                if(local != null){
+                    if(local.getData() == null){
+                        nullHits++;
+                    } else {
+                        hits++;
+                    }
+                    putIfNotNull(found, id, type.cast(local.getData()));
+                    continue;
+                }
+            }
+            redisIds.add(id);
+        }
+
+        //一次MGET查询redis
+        List<ID> missIds = new ArrayList<>();
+        List<byte[]> values = multiGet(keyPrefix, redisIds);
+        for (int i = 0; i < redisIds.size(); i++) {
+            ID id = redisIds.get(i);
+            byte[] bytes = values.get(i);
+            if(!isNotEmpty(bytes)){
+                missIds.add(id);
+                continue;
+            }
+            //空值，说明数据库中不存在
+            if(Arrays.equals(bytes, NULL_VALUE)){
+                nullHits++;
+                continue;
+            }
+            R r = decode(key(keyPrefix, id), bytes, type);
+            if(r == null){
+                missIds.add(id);
+                continue;
+            }
+            if(localIds.contains(id)){
+                putLocal(keyPrefix, key(keyPrefix, id), r);
+            }
+            found.put(id, r);
+            hits++;
+        }
+        metrics.increment(keyPrefix, HIT, hits);
+        metrics.increment(keyPrefix, NULL_HIT, nullHits);
+        metrics.increment(keyPrefix, MISS, missIds.size());
+
+        if(!missIds.isEmpty()){
+            //未命中的id一次查询数据库
+            metrics.increment(keyPrefix, REBUILD_STARTED, missIds.size());
+            Map<ID, R> loaded;
+            try {
+                loaded = metrics.db(keyPrefix, () -> dbFallback.apply(missIds));
+            } catch (RuntimeException e) {
+                metrics.increment(keyPrefix, REBUILD_FAILED, missIds.size());
+                throw e;
+            }
+            //管道批量写回redis，不存在的id写入空值
+            metrics.redis(keyPrefix, () -> byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : missIds) {
+                    R r = loaded.get(id);
+                    if(r == null){
+                        connection.set(rawKey(key(keyPrefix, id)), NULL_VALUE,
+                                Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES), RedisStringCommands.SetOption.upsert());
+                    } else {
+                        connection.set(rawKey(key(keyPrefix, id)), codec.encode(r),
+                                Expiration.from(time, unit), RedisStringCommands.SetOption.upsert());
+                    }
+                }
+                return null;
+            }));
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                if(r == null){
+                    //布隆过滤器放行但数据不存在，记录误判
+                    if(bloomFilter != null){
+                        bloomFilter.recordFalsePositive();
+                    }
+                    continue;
+                }
+                if(localIds.contains(id)){
+                    putLocal(keyPrefix, key(keyPrefix, id), r);
+                }
+                found.put(id, r);
+            }
+        }
+        return inOrder(distinctIds, found);
+    }
+
+    /**
+     * 批量查询（逻辑过期方案）：一次MGET查询redis，未命中的id一次查询数据库，
+     * 已过期的id由独立线程批量重建，当前请求返回过期数据
+     * @param dbFallback 根据id集合批量查询数据库，返回id到数据的映射，不存在的id不放入映射
+     * @return id到数据的映射，按传入id的顺序排列，不存在的id不包含在内
+     */
+    public <R, ID> Map<ID, R> queryBatchWithLogicalExpire(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit){
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        Set<ID> distinctIds = new LinkedHashSet<>(ids);
+        //开启了本地缓存或为热点的id
+        Set<ID> localIds = new HashSet<>();
+        Map<ID, R> found = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        //布隆过滤器拦截、本地缓存未过期的id不再访问redis
+        List<ID> redisIds = new ArrayList<>();
+        int hits = 0, misses = 0, stales = 0;
+        for (ID id : distinctIds) {
+            if(bloomFilter != null && !bloomFilter.mightContain(id)){
+                continue;
+            }
+            String key = key(keyPrefix, id);
+            if(useLocal(keyPrefix, key)){
+                localIds.add(id);
+                RedisData local = localCache.get(key, false);
+                if(local != null && local.getExpireTime() != null && local.getExpireTime().isAfter(now)){
+                    putIfNotNull(found, id, type.cast(local.getData()));
+                    hits++;
+                    continue;
+                }
+            }
+            redisIds.add(id);
+        }
+
+        //一次MGET查询redis
+        List<ID> missIds = new ArrayList<>();
+        List<ID> expiredIds = new ArrayList<>();
+        List<byte[]> values = multiGet(keyPrefix, redisIds);
+        for (int i = 0; i < redisIds.size(); i++) {
+            ID id = redisIds.get(i);
+            String key = key(keyPrefix, id);
+            byte[] bytes = values.get(i);
+            //未命中，稍后一次查询数据库
+            if(!isNotEmpty(bytes)){
+                missIds.add(id);
+                continue;
+            }
+            RedisData redisData = decodeLogical(key, bytes, type);
+            if(redisData == null){
+                misses++;
+                expiredIds.add(id);
+                continue;
+            }
+            if(redisData.getExpireTime().isAfter(now)){
+                hits++;
+                if(localIds.contains(id)){
+                    putLocal(keyPrefix, key, redisData);
+                }
+            } else {
+                stales++;
+            }
+            if(needRebuild(keyPrefix, redisData)){
+                expiredIds.add(id);
+            }
+            putIfNotNull(found, id, type.cast(redisData.getData()));
+        }
+        metrics.increment(keyPrefix, HIT, hits);
+        metrics.increment(keyPrefix, MISS, misses + missIds.size());
+        metrics.increment(keyPrefix, STALE, stales);
+
+        //未命中的id一次查询数据库，通过管道写入逻辑过期数据
+        if(!missIds.isEmpty()){
+            metrics.increment(keyPrefix, REBUILD_STARTED, missIds.size());
+            long begin = System.currentTimeMillis();
+            Map<ID, R> loaded;
+            try {
+                loaded = metrics.db(keyPrefix, () -> dbFallback.apply(missIds));
+            } catch (RuntimeException e) {
+                metrics.increment(keyPrefix, REBUILD_FAILED, missIds.size());
+                throw e;
+            }
+            long rebuildCost = System.currentTimeMillis() - begin;
+            Map<ID, R> rebuilt = new LinkedHashMap<>();
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                rebuilt.put(id, r);
+                if(r == null && bloomFilter != null){
+                    bloomFilter.recordFalsePositive();
+                }
+                putIfNotNull(found, id, r);
+            }
+            metrics.redis(keyPrefix, () -> setBatchWithLogicalExpire(keyPrefix, rebuilt, time, unit, rebuildCost));
+        }
+
+        //已过期，交给重建线程池批量重建，每个id仍需获取各自的互斥锁；本节点已在重建的id跳过
+        if(!expiredIds.isEmpty()){
+            Map<String, ID> expiredKeys = new LinkedHashMap<>();
+            expiredIds.forEach(id -> expiredKeys.put(key(keyPrefix, id), id));
+            rebuildExecutor.submit(expiredKeys.keySet(), claimedKeys -> {
+                List<ID> lockedIds = new ArrayList<>();
                 try {
-                    //重建缓存
-                    //查询数据库
-                    R r1 = dbFallback.apply(id);
-                    //写入redis
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    claimedKeys.stream().map(expiredKeys::get)
+                            .filter(id -> tryLock(LOCK_SHOP_KEY + id)).forEach(lockedIds::add);
+                    metrics.increment(keyPrefix, LOCK_CONTENDED, claimedKeys.size() - lockedIds.size());
+                    if(lockedIds.isEmpty()){
+                        return;
+                    }
+                    metrics.increment(keyPrefix, REBUILD_STARTED, lockedIds.size());
+                    long begin = System.currentTimeMillis();
+                    Map<ID, R> loaded = metrics.db(keyPrefix, () -> dbFallback.apply(lockedIds));
+                    long rebuildCost = System.currentTimeMillis() - begin;
+                    //已不存在的数据同样写入，避免反复重建
+                    Map<ID, R> rebuilt = new LinkedHashMap<>();
+                    lockedIds.forEach(id -> rebuilt.put(id, loaded.get(id)));
+                    metrics.redis(keyPrefix, () -> setBatchWithLogicalExpire(keyPrefix, rebuilt, time, unit, rebuildCost));
+                    lockedIds.forEach(id -> evictLocal(key(keyPrefix, id)));
+                } catch (RuntimeException e) {
+                    metrics.increment(keyPrefix, REBUILD_FAILED, lockedIds.size());
+                    throw e;
                 } finally {
-                    //释放锁
-                    unLock((lockKey));
+                    lockedIds.forEach(id -> unLock(LOCK_SHOP_KEY + id));
                 }
             });
         }
+        return inOrder(distinctIds, found);
+    }
 
-        //返回过期的商铺信息
-        return r;
+    private <ID> List<byte[]> multiGet(String keyPrefix, List<ID> ids){
+        if(ids.isEmpty()){
+            return new ArrayList<>();
+        }
+        String namespace = namespace(keyPrefix);
+        List<String> keys = ids.stream().map(id -> namespace + id).collect(Collectors.toList());
+        List<byte[]> values = metrics.redis(keyPrefix, () -> byteRedisTemplate.opsForValue().multiGet(keys));
+        //管道或事务中会返回null，按全部未命中处理
+        if(values == null){
+            values = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    //解码失败（如数据结构已变化）时按未命中处理
+    private <R> R decode(String key, byte[] bytes, Class<R> type){
+        try {
+            return codec.decode(bytes, type);
+        } catch (RuntimeException e) {
+            log.warn("缓存数据解码失败，按未命中处理，key={}", key, e);
+            return null;
+        }
+    }
+
+    private RedisData decodeLogical(String key, byte[] bytes, Class<?> type){
+        try {
+            return codec.decodeLogical(bytes, type);
+        } catch (RuntimeException e) {
+            log.warn("缓存数据解码失败，按已过期处理，key={}", key, e);
+            return null;
+        }
+    }
+
+    private static boolean isNotEmpty(byte[] bytes){
+        return bytes != null && bytes.length > 0;
+    }
+
+    private static byte[] rawKey(String key){
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static <R, ID> void putIfNotNull(Map<ID, R> map, ID id, R value){
+        if(value != null){
+            map.put(id, value);
+        }
+    }
+
+    private static <R, ID> Map<ID, R> inOrder(Set<ID> ids, Map<ID, R> found){
+        Map<ID, R> result = new LinkedHashMap<>();
+        for (ID id : ids) {
+            putIfNotNull(result, id, found.get(id));
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        asyncLoadExecutor.shutdown();
+        asyncCallbackExecutor.shutdown();
+    }
+
+    /**
+     * 记录访问并判断是否使用本地缓存：前缀开启了本地缓存，或该key是本节点的热点key
+     */
+    private boolean useLocal(String keyPrefix, String key){
+        boolean hot = hotKeyDetector.record(key);
+        return hot || localCachePrefixes.contains(keyPrefix);
+    }
+
+    //缓存穿透方案的本地缓存只按本地TTL淘汰，不设置逻辑过期时间
+    private void putLocal(String keyPrefix, String key, Object value){
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        putLocal(keyPrefix, key, redisData);
+    }
+
+    //未开启本地缓存的前缀，只有热点key写入本地缓存，且使用较短的TTL
+    private void putLocal(String keyPrefix, String key, RedisData redisData){
+        if(localCachePrefixes.contains(keyPrefix)){
+            localCache.put(key, redisData);
+        } else {
+            localCache.put(key, redisData, TimeUnit.SECONDS.toMillis(CACHE_HOT_KEY_TTL));
+        }
     }
 
     //上锁
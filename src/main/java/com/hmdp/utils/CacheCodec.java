@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值编解码器，决定CacheClient写入redis的字节格式
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码缓存值
+     * @param value 缓存值，不能为null
+     * @return 写入redis的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码缓存值
+     * @param bytes redis中读到的字节
+     * @param type 目标类型
+     * @return 缓存值
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 解码逻辑过期数据，data字段直接解码为目标类型
+     * @param bytes redis中读到的字节
+     * @param type data字段的类型
+     * @return data已是目标类型的RedisData
+     */
+    RedisData decodeLogical(byte[] bytes, Class<?> type);
+}
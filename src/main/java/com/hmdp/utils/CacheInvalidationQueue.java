@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存失效队列：事务内收集要删除的key，提交后再交给后台线程，
+ * 按批通过管道UNLINK并广播本地缓存失效；可选延迟二次删除，
+ * 清理提交前后被并发读请求写回的旧数据
+ */
+@Slf4j
+@Component
+public class CacheInvalidationQueue {
+
+    private static final byte[] INVALIDATE_CHANNEL = CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheClient cacheClient;
+    //二次删除的延迟（毫秒），0表示不开启
+    private final long doubleDeleteDelayMillis;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(CACHE_INVALIDATE_QUEUE_CAPACITY);
+    //二次删除的延迟调度
+    private final ScheduledExecutorService scheduler;
+    private final Thread worker = new Thread(this::run, "cache-invalidation");
+    private volatile boolean running = true;
+
+    private final Counter flushed;
+    private final Counter dropped;
+    private final Timer flushTimer;
+
+    @Autowired
+    public CacheInvalidationQueue(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient,
+                                  @Value("${hmdp.cache.invalidation.double-delete-delay-millis:0}") long doubleDeleteDelayMillis,
+                                  MeterRegistry meterRegistry) {
+        this(stringRedisTemplate, cacheClient, doubleDeleteDelayMillis, meterRegistry,
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "cache-invalidation-delay");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    CacheInvalidationQueue(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient, long doubleDeleteDelayMillis,
+                           MeterRegistry meterRegistry, ScheduledExecutorService scheduler) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheClient = cacheClient;
+        this.doubleDeleteDelayMillis = doubleDeleteDelayMillis;
+        this.scheduler = scheduler;
+        Gauge.builder("hmdp.cache.invalidation.queue", queue, BlockingQueue::size).register(meterRegistry);
+        this.flushed = meterRegistry.counter("hmdp.cache.invalidation.flushed");
+        this.dropped = meterRegistry.counter("hmdp.cache.invalidation.dropped");
+        this.flushTimer = Timer.builder("hmdp.cache.invalidation.flush").register(meterRegistry);
+    }
+
+    @PostConstruct
+    private void init() {
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 删除缓存：在事务中时等事务提交后再删除，回滚则不删除；不在事务中时立即入队
+     * @param key 缓存key
+     */
+    public void invalidate(String key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(Collections.singletonList(key), true);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> keys = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (keys == null) {
+            //本事务第一次删除，注册提交后的回调
+            Set<String> txKeys = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, txKeys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(txKeys, true);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidationQueue.this);
+                }
+            });
+            keys = txKeys;
+        }
+        keys.add(key);
+    }
+
+    private void enqueue(Collection<String> keys, boolean scheduleSecondDelete) {
+        for (String key : keys) {
+            //本节点的本地缓存立即清理，其它节点等待广播
+            cacheClient.evictLocal(key);
+            if (!queue.offer(key)) {
+                dropped.increment();
+                log.warn("缓存失效队列已满，丢弃key={}", key);
+            }
+        }
+        if (scheduleSecondDelete && doubleDeleteDelayMillis > 0) {
+            List<String> copy = new ArrayList<>(keys);
+            scheduler.schedule(() -> enqueue(copy, false), doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void run() {
+        List<String> batch = new ArrayList<>(CACHE_INVALIDATE_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                //一次取出已积压的key，负载越高批次越大
+                queue.drainTo(batch, CACHE_INVALIDATE_BATCH_SIZE - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("批量删除缓存失败，keys={}", batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    //一个管道内UNLINK全部key，并广播各节点清理本地缓存
+    private void flush(List<String> keys) {
+        Set<String> distinct = new LinkedHashSet<>(keys);
+        flushTimer.record(() -> stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            unlinkAndPublish(connection, distinct);
+            return null;
+        }));
+        flushed.increment(distinct.size());
+    }
+
+    private static void unlinkAndPublish(RedisConnection connection, Set<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            rawKeys[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        connection.unlink(rawKeys);
+        for (byte[] rawKey : rawKeys) {
+            connection.publish(INVALIDATE_CHANNEL, rawKey);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        scheduler.shutdownNow();
+        //处理完已入队的key后退出
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * CacheClient的指标，按key前缀统计
+ * <p>
+ * 计数器 hmdp.cache.events{prefix, event}：
+ * hit 命中，null_hit 命中空值，miss 未命中，stale 返回逻辑过期数据，
+ * rebuild_started 开始重建，rebuild_failed 重建失败，lock_contended 抢锁失败；
+ * 耗时直方图 hmdp.cache.latency{prefix, source}：source为redis或db
+ */
+public class CacheMetrics {
+
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String MISS = "miss";
+    public static final String STALE = "stale";
+    public static final String REBUILD_STARTED = "rebuild_started";
+    public static final String REBUILD_FAILED = "rebuild_failed";
+    public static final String LOCK_CONTENDED = "lock_contended";
+
+    private static final String SOURCE_REDIS = "redis";
+    private static final String SOURCE_DB = "db";
+
+    private final MeterRegistry registry;
+    //缓存已注册的指标，避免每次调用都走注册表查找
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void increment(String keyPrefix, String event) {
+        increment(keyPrefix, event, 1);
+    }
+
+    public void increment(String keyPrefix, String event, long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        counters.computeIfAbsent(keyPrefix + '|' + event, k -> Counter.builder("hmdp.cache.events")
+                .tag("prefix", keyPrefix)
+                .tag("event", event)
+                .register(registry))
+                .increment(amount);
+    }
+
+    /**
+     * 执行redis调用并记录耗时
+     */
+    public <T> T redis(String keyPrefix, Supplier<T> call) {
+        return timer(keyPrefix, SOURCE_REDIS).record(call);
+    }
+
+    public void redis(String keyPrefix, Runnable call) {
+        timer(keyPrefix, SOURCE_REDIS).record(call);
+    }
+
+    /**
+     * 执行异步redis调用，在完成时记录耗时
+     */
+    public <T> CompletionStage<T> redisAsync(String keyPrefix, Supplier<? extends CompletionStage<T>> call) {
+        Timer timer = timer(keyPrefix, SOURCE_REDIS);
+        long begin = System.nanoTime();
+        return call.get().whenComplete((r, e) -> timer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 执行数据库查询并记录耗时
+     */
+    public <T> T db(String keyPrefix, Supplier<T> call) {
+        return timer(keyPrefix, SOURCE_DB).record(call);
+    }
+
+    private Timer timer(String keyPrefix, String source) {
+        return timers.computeIfAbsent(keyPrefix + '|' + source, k -> Timer.builder("hmdp.cache.latency")
+                .tag("prefix", keyPrefix)
+                .tag("source", source)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(registry));
+    }
+}
@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 缓存重建线程池：有界队列，按key去重，队列满时按配置的策略处理，
+ * 任务异常记录日志和指标，随Spring容器关闭
+ * <p>
+ * 拒绝策略：discard 丢弃新任务（默认，调用方继续返回旧数据）；
+ * discard-oldest 丢弃队列中最早的任务；caller-runs 由调用线程执行
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    public static final String DISCARD = "discard";
+    public static final String DISCARD_OLDEST = "discard-oldest";
+    public static final String CALLER_RUNS = "caller-runs";
+
+    private final ThreadPoolExecutor executor;
+    private final String rejectionPolicy;
+    private final long awaitTerminationSeconds;
+    //已提交但未执行完的key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final Timer waitTimer;
+    private final Timer runTimer;
+    private final Counter deduplicated;
+    private final Counter rejected;
+    private final Counter failed;
+
+    public CacheRebuildExecutor(@Value("${hmdp.cache.rebuild.pool-size:10}") int poolSize,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity,
+                                @Value("${hmdp.cache.rebuild.rejection-policy:discard}") String rejectionPolicy,
+                                @Value("${hmdp.cache.rebuild.await-termination-seconds:10}") long awaitTerminationSeconds,
+                                MeterRegistry meterRegistry) {
+        if (!DISCARD.equals(rejectionPolicy) && !DISCARD_OLDEST.equals(rejectionPolicy) && !CALLER_RUNS.equals(rejectionPolicy)) {
+            throw new IllegalArgumentException("不支持的拒绝策略：" + rejectionPolicy);
+        }
+        this.rejectionPolicy = rejectionPolicy;
+        this.awaitTerminationSeconds = awaitTerminationSeconds;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("hmdp.cache.rebuild.queue", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("hmdp.cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("hmdp.cache.rebuild.pending", pendingKeys, Set::size).register(meterRegistry);
+        this.waitTimer = Timer.builder("hmdp.cache.rebuild.wait").publishPercentileHistogram().register(meterRegistry);
+        this.runTimer = Timer.builder("hmdp.cache.rebuild.duration").publishPercentileHistogram().register(meterRegistry);
+        this.deduplicated = meterRegistry.counter("hmdp.cache.rebuild.deduplicated");
+        this.rejected = meterRegistry.counter("hmdp.cache.rebuild.rejected");
+        this.failed = meterRegistry.counter("hmdp.cache.rebuild.failed");
+    }
+
+    /**
+     * 提交重建任务，同一个key已在队列中或正在执行时不重复提交
+     * @return 是否已提交（或按caller-runs策略已执行）
+     */
+    public boolean submit(String key, Runnable task) {
+        return !submit(Collections.singletonList(key), claimed -> task.run()).isEmpty();
+    }
+
+    /**
+     * 提交批量重建任务，已在队列中或正在执行的key会被跳过
+     * @param keys 本任务要重建的key
+     * @param task 接收实际由本任务负责的key
+     * @return 实际由本任务负责的key，为空表示未提交
+     */
+    public List<String> submit(Collection<String> keys, Consumer<List<String>> task) {
+        List<String> claimed = new ArrayList<>();
+        for (String key : keys) {
+            if (pendingKeys.add(key)) {
+                claimed.add(key);
+            } else {
+                deduplicated.increment();
+            }
+        }
+        if (claimed.isEmpty()) {
+            return claimed;
+        }
+        RebuildTask rebuildTask = new RebuildTask(claimed, task);
+        while (true) {
+            try {
+                executor.execute(rebuildTask);
+                return claimed;
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                if (executor.isShutdown() || DISCARD.equals(rejectionPolicy)) {
+                    claimed.forEach(pendingKeys::remove);
+                    return Collections.emptyList();
+                }
+                if (CALLER_RUNS.equals(rejectionPolicy)) {
+                    rebuildTask.run();
+                    return claimed;
+                }
+                //丢弃最早的任务后重试
+                Runnable oldest = executor.getQueue().poll();
+                if (oldest instanceof RebuildTask) {
+                    ((RebuildTask) oldest).keys.forEach(pendingKeys::remove);
+                }
+            }
+        }
+    }
+
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(awaitTerminationSeconds, TimeUnit.SECONDS)) {
+                List<Runnable> dropped = executor.shutdownNow();
+                log.warn("缓存重建线程池关闭超时，丢弃{}个任务", dropped.size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class RebuildTask implements Runnable {
+        private final List<String> keys;
+        private final Consumer<List<String>> task;
+        private final long submitTime = System.nanoTime();
+
+        private RebuildTask(List<String> keys, Consumer<List<String>> task) {
+            this.keys = keys;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            waitTimer.record(System.nanoTime() - submitTime, TimeUnit.NANOSECONDS);
+            long begin = System.nanoTime();
+            try {
+                task.accept(keys);
+            } catch (Exception e) {
+                failed.increment();
+                log.error("缓存重建失败，keys={}", keys, e);
+            } finally {
+                runTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                keys.forEach(pendingKeys::remove);
+            }
+        }
+    }
+}
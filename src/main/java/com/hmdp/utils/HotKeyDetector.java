@@ -0,0 +1,119 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本节点热点key探测：对访问抽样计入count-min sketch，每个窗口计数减半（衰减），
+ * 估计访问量超过阈值的key记为热点，最多保留topK个
+ */
+public class HotKeyDetector {
+
+    private final int depth;
+    private final int width;
+    private final AtomicIntegerArray counters;
+    private final double sampleRate;
+    //按抽样率换算后的阈值
+    private final int sampledThreshold;
+    private final int topK;
+    private final long windowMillis;
+    private final AtomicLong lastDecay = new AtomicLong(System.currentTimeMillis());
+    //当前热点key及其抽样计数的估计值
+    private final Map<String, Integer> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param width 每行计数器个数，越大误差越小
+     * @param depth 哈希函数个数，越大误差概率越小
+     * @param sampleRate 抽样率，(0, 1]
+     * @param threshold 一个窗口内的访问量达到该值视为热点（已衰减的计数）
+     * @param topK 最多保留的热点key个数
+     * @param windowMillis 衰减窗口（毫秒）
+     */
+    public HotKeyDetector(int width, int depth, double sampleRate, long threshold, int topK, long windowMillis) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicIntegerArray(width * depth);
+        this.sampleRate = sampleRate;
+        this.sampledThreshold = (int) Math.max(1, Math.round(threshold * sampleRate));
+        this.topK = topK;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * 记录一次访问
+     * @return 该key当前是否为热点
+     */
+    public boolean record(String key) {
+        decayIfNeeded();
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return hotKeys.containsKey(key);
+        }
+        long[] hash = MurmurHash.hash128(key.getBytes(StandardCharsets.UTF_8));
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, i)));
+        }
+        if (estimate < sampledThreshold) {
+            return hotKeys.containsKey(key);
+        }
+        hotKeys.put(key, estimate);
+        if (hotKeys.size() > topK) {
+            evictColdest();
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 当前热点key，按估计访问量降序
+     * @return key到窗口内估计访问量的映射
+     */
+    public Map<String, Long> topKeys() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            result.put(entry.getKey(), Math.round(entry.getValue() / sampleRate));
+        }
+        return result;
+    }
+
+    //double hashing：第i个哈希为 h1 + i * h2，每行一段
+    private int index(long[] hash, int i) {
+        long combined = hash[0] + i * hash[1];
+        return i * width + (int) ((combined & Long.MAX_VALUE) % width);
+    }
+
+    private void evictColdest() {
+        hotKeys.entrySet().stream()
+                .min(Comparator.comparingInt(Map.Entry::getValue))
+                .ifPresent(coldest -> hotKeys.remove(coldest.getKey(), coldest.getValue()));
+    }
+
+    //每个窗口所有计数减半，并移除降到阈值以下的热点key
+    private void decayIfNeeded() {
+        long last = lastDecay.get();
+        long now = System.currentTimeMillis();
+        if (now - last < windowMillis || !lastDecay.compareAndSet(last, now)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >> 1);
+        }
+        hotKeys.replaceAll((key, count) -> count >> 1);
+        hotKeys.values().removeIf(count -> count < sampledThreshold);
+    }
+}
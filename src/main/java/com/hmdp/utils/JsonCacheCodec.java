@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于hutool JSON的编解码器，与原有缓存数据格式兼容
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public RedisData decodeLogical(byte[] bytes, Class<?> type) {
+        //只解析一次JSON，data字段由JSONObject直接转换为目标类型
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        JSONObject data = json.getJSONObject("data");
+        json.remove("data");
+        RedisData redisData = json.toBean(RedisData.class);
+        redisData.setData(data == null ? null : data.toBean(type));
+        return redisData;
+    }
+}
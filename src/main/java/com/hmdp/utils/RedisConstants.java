@@ -11,11 +11,73 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
+
+    public static final String CACHE_SHOP_RESPONSE_KEY = "cache:resp:shop:";
+    public static final Long CACHE_SHOP_RESPONSE_TTL = 10L;
+    public static final String CACHE_VOUCHER_RESPONSE_KEY = "cache:resp:voucher:";
+    public static final Long CACHE_VOUCHER_RESPONSE_TTL = 1L;
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final int CACHE_LOCAL_MAX_SIZE = 10000;
+    public static final Long CACHE_LOCAL_TTL = 60L;
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final int CACHE_INVALIDATE_QUEUE_CAPACITY = 100000;
+    public static final int CACHE_INVALIDATE_BATCH_SIZE = 500;
+
+    public static final String CACHE_NAMESPACE_KEY = "cache:ns:";
+    public static final String CACHE_NAMESPACE_CHANNEL = "cache:ns:bump";
+    public static final Long CACHE_NAMESPACE_REFRESH_TTL = 30L;
+    public static final Long CACHE_NAMESPACE_GRACE_TTL = 60L;
+    public static final double CACHE_EARLY_REFRESH_BETA = 1.0;
+
+    public static final int CACHE_HOT_KEY_SKETCH_WIDTH = 4096;
+    public static final int CACHE_HOT_KEY_SKETCH_DEPTH = 4;
+    public static final double CACHE_HOT_KEY_SAMPLE_RATE = 0.1;
+    public static final long CACHE_HOT_KEY_THRESHOLD = 1000L;
+    public static final int CACHE_HOT_KEY_TOP_K = 100;
+    public static final Long CACHE_HOT_KEY_WINDOW = 10L;
+    public static final Long CACHE_HOT_KEY_TTL = 5L;
+
+    public static final int CACHE_ASYNC_LOAD_POOL_SIZE = 20;
+    public static final int CACHE_ASYNC_LOAD_QUEUE_CAPACITY = 1000;
+    public static final int CACHE_ASYNC_CALLBACK_POOL_SIZE = 4;
+
+    public static final String CACHE_BLOOM_ADD_CHANNEL = "cache:bloom:add";
+    public static final long SHOP_BLOOM_EXPECTED_INSERTIONS = 1000000L;
+    public static final double SHOP_BLOOM_FPP = 0.01;
+    public static final Long SHOP_BLOOM_REBUILD_INTERVAL = 10L;
+    public static final int CACHE_PRELOAD_BATCH_SIZE = 1000;
+    public static final String LOCK_PRELOAD_SHOP_NAME = ":preload:shop";
+    public static final Long LOCK_PRELOAD_TTL = 600L;
+
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_TICKET_KEY = "seckill:ticket:";
+    public static final String SECKILL_TICKET_SEQ_KEY = "seckill:ticket:seq:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final Long SECKILL_SOLD_OUT_TTL = 2L;
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_VOUCHER_CHANNEL = "seckill:voucher";
+    public static final Long SECKILL_VOUCHER_NULL_TTL = 60L;
+    public static final Long SECKILL_SCHEDULE_INTERVAL = 60L;
+    public static final Long SECKILL_FINISH_GRACE_TTL = 10L;
+    public static final Long SECKILL_KEY_RETAIN_TTL = 1L;
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final int SECKILL_ORDER_BATCH_SIZE = 100;
+    public static final Long SECKILL_ORDER_BLOCK_TTL = 2L;
+    public static final Long SECKILL_ORDER_RECOVER_INTERVAL = 30L;
+    public static final Long SECKILL_ORDER_CLAIM_IDLE_TTL = 60L;
+    public static final String SECKILL_ORDER_DEAD_LETTER_KEY = "stream.orders.dlq";
+    public static final long SECKILL_ORDER_MAX_DELIVERIES = 10L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_TTL;
+
+/**
+ * 本节点的秒杀券售罄标记：售罄后的请求在本地直接拒绝，不再访问redis和数据库；
+ * 标记和清除都会广播给其它节点，补充库存时清除
+ * <p>
+ * 标记只保留SECKILL_SOLD_OUT_TTL秒，过期后重新由redis判断：
+ * 与补充库存并发时晚到的售罄广播、或错过清除广播的节点，最多在这段时间内误拒请求
+ * <p>
+ * 广播消息格式：1:券id 表示售罄，0:券id 表示清除
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry {
+
+    private static final String SOLD_OUT = "1:";
+    private static final String CLEARED = "0:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    //售罄标记的有效时间（毫秒）
+    private final long ttlMillis;
+    //券id及标记的过期时间
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SeckillSoldOutRegistry(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, TimeUnit.SECONDS.toMillis(SECKILL_SOLD_OUT_TTL));
+    }
+
+    SeckillSoldOutRegistry(StringRedisTemplate stringRedisTemplate, long ttlMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt > System.currentTimeMillis()) {
+            return true;
+        }
+        soldOut.remove(voucherId, expireAt);
+        return false;
+    }
+
+    /**
+     * 标记售罄并通知其它节点，本节点标记未过期时不重复广播
+     */
+    public void markSoldOut(Long voucherId) {
+        boolean marked = isSoldOut(voucherId);
+        mark(voucherId);
+        if (!marked) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + voucherId);
+        }
+    }
+
+    /**
+     * 清除售罄标记并通知其它节点
+     */
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, CLEARED + voucherId);
+    }
+
+    private void mark(Long voucherId) {
+        soldOut.put(voucherId, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * 处理其它节点的广播
+     */
+    public void onMessage(String message) {
+        try {
+            Long voucherId = Long.valueOf(message.substring(2));
+            if (message.startsWith(SOLD_OUT)) {
+                mark(voucherId);
+            } else if (message.startsWith(CLEARED)) {
+                soldOut.remove(voucherId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法解析售罄广播：{}", message, e);
+        }
+    }
+}
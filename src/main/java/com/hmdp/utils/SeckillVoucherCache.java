@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_NULL_TTL;
+
+/**
+ * 秒杀券的开始和结束时间缓存：本地缓存 + redis，下单时判断是否存在、是否在秒杀时间内不访问redis和数据库
+ * <p>
+ * 新增秒杀券时写入redis并广播，各节点删除本地缓存（包括不存在的标记），下次从redis加载；
+ * redis中没有时（如历史数据）从数据库加载并写回redis；不存在的券在本地记录一段时间
+ * <p>
+ * redis中的值格式：开始时间毫秒,结束时间毫秒
+ */
+@Slf4j
+@Component
+public class SeckillVoucherCache {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ISeckillVoucherService seckillVoucherService;
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+    //不存在的券及标记的过期时间
+    private final Map<Long, Long> missing = new ConcurrentHashMap<>();
+
+    public SeckillVoucherCache(StringRedisTemplate stringRedisTemplate, ISeckillVoucherService seckillVoucherService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherService = seckillVoucherService;
+    }
+
+    /**
+     * 秒杀券的时间窗口
+     * @return 券不存在时返回null
+     */
+    public Window get(Long voucherId) {
+        Window window = windows.get(voucherId);
+        if (window != null) {
+            return window;
+        }
+        Long expireAt = missing.get(voucherId);
+        if (expireAt != null) {
+            if (expireAt > System.currentTimeMillis()) {
+                return null;
+            }
+            missing.remove(voucherId, expireAt);
+        }
+        return windows.computeIfAbsent(voucherId, this::load);
+    }
+
+    /**
+     * 新增秒杀券时写入redis，并通知各节点删除本地缓存
+     */
+    public void put(SeckillVoucher voucher) {
+        Window window = new Window(toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime()));
+        stringRedisTemplate.opsForValue().set(SECKILL_VOUCHER_KEY + voucher.getVoucherId(), window.encode());
+        evict(voucher.getVoucherId());
+        stringRedisTemplate.convertAndSend(SECKILL_VOUCHER_CHANNEL, voucher.getVoucherId().toString());
+    }
+
+    /**
+     * 处理其它节点的广播
+     */
+    public void onMessage(String message) {
+        try {
+            evict(Long.valueOf(message));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析秒杀券广播：{}", message, e);
+        }
+    }
+
+    private void evict(Long voucherId) {
+        windows.remove(voucherId);
+        missing.remove(voucherId);
+    }
+
+    private Window load(Long voucherId) {
+        String key = SECKILL_VOUCHER_KEY + voucherId;
+        String value = stringRedisTemplate.opsForValue().get(key);
+        if (value != null) {
+            return Window.decode(value);
+        }
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            //记录不存在，避免不存在的id每次都查数据库
+            missing.put(voucherId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(SECKILL_VOUCHER_NULL_TTL));
+            return null;
+        }
+        Window window = new Window(toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime()));
+        stringRedisTemplate.opsForValue().setIfAbsent(key, window.encode());
+        return window;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 秒杀时间窗口，毫秒时间戳
+     */
+    public static final class Window {
+        private final long beginTime;
+        private final long endTime;
+
+        public Window(long beginTime, long endTime) {
+            this.beginTime = beginTime;
+            this.endTime = endTime;
+        }
+
+        public long getBeginTime() {
+            return beginTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public boolean notStarted(long now) {
+            return now < beginTime;
+        }
+
+        public boolean ended(long now) {
+            return now > endTime;
+        }
+
+        String encode() {
+            return beginTime + "," + endTime;
+        }
+
+        static Window decode(String value) {
+            int i = value.indexOf(',');
+            return new Window(Long.parseLong(value.substring(0, i)), Long.parseLong(value.substring(i + 1)));
+        }
+    }
+}
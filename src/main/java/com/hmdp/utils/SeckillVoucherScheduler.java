@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀券的预热和收尾：定期扫描tb_seckill_voucher，
+ * 即将开始（leadMinutes分钟内）或进行中的秒杀券，加载库存和一人一单的用户集合，预热店铺优惠券列表缓存和下单路径；
+ * 已结束的秒杀券核对库存后让相关key过期
+ * <p>
+ * 每个节点都会执行，预热本节点的本地缓存；redis中的操作均可重复执行
+ */
+@Slf4j
+@Component
+public class SeckillVoucherScheduler {
+
+    private final ISeckillVoucherService seckillVoucherService;
+    private final IVoucherService voucherService;
+    private final IVoucherOrderService voucherOrderService;
+    private final StringRedisTemplate stringRedisTemplate;
+    //提前预热的时间（分钟）
+    private final long leadMinutes;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "seckill-voucher-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SeckillVoucherScheduler(ISeckillVoucherService seckillVoucherService, IVoucherService voucherService,
+                                   IVoucherOrderService voucherOrderService, StringRedisTemplate stringRedisTemplate,
+                                   @Value("${hmdp.seckill.prewarm.lead-minutes:10}") long leadMinutes) {
+        this.seckillVoucherService = seckillVoucherService;
+        this.voucherService = voucherService;
+        this.voucherOrderService = voucherOrderService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leadMinutes = leadMinutes;
+    }
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::scan, 0, SECKILL_SCHEDULE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private void scan() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            //即将开始或进行中的秒杀券
+            List<SeckillVoucher> upcoming = seckillVoucherService.query()
+                    .le("begin_time", now.plusMinutes(leadMinutes))
+                    .gt("end_time", now)
+                    .list();
+            upcoming.forEach(this::prepare);
+            //最近一天内结束的秒杀券
+            List<SeckillVoucher> ended = seckillVoucherService.query()
+                    .le("end_time", now)
+                    .gt("end_time", now.minusDays(1))
+                    .list();
+            ended.forEach(voucher -> finish(voucher, now));
+        } catch (Exception e) {
+            log.warn("扫描秒杀券失败", e);
+        }
+    }
+
+    private void prepare(SeckillVoucher seckillVoucher) {
+        try {
+            voucherOrderService.prepareSeckill(seckillVoucher);
+            //预热店铺的优惠券列表响应
+            Voucher voucher = voucherService.getById(seckillVoucher.getVoucherId());
+            if (voucher != null) {
+                voucherService.queryVoucherResponseOfShop(voucher.getShopId()).join();
+            }
+        } catch (Exception e) {
+            log.warn("预热秒杀券失败，voucherId={}", seckillVoucher.getVoucherId(), e);
+        }
+    }
+
+    private void finish(SeckillVoucher voucher, LocalDateTime now) {
+        Long voucherId = voucher.getVoucherId();
+        try {
+            //库存key已设置过期时间或不存在，说明已处理过
+            Long ttl = stringRedisTemplate.getExpire(SECKILL_STOCK_KEY + voucherId);
+            if (ttl == null || ttl != -1) {
+                return;
+            }
+            //结束后等待一段时间，让消息队列中的订单写入数据库，超时后库存不一致也过期
+            boolean force = voucher.getEndTime().plusMinutes(SECKILL_FINISH_GRACE_TTL).isBefore(now);
+            if (voucherOrderService.finishSeckill(voucher, force)) {
+                log.info("秒杀已结束，相关key将在{}小时后过期，voucherId={}", SECKILL_KEY_RETAIN_TTL, voucherId);
+            }
+        } catch (Exception e) {
+            log.warn("秒杀券收尾失败，voucherId={}", voucherId, e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.SeckillTicket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_TICKET_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TICKET_SEQ_KEY;
+
+/**
+ * 秒杀排队：用户先领取号码，每张券从开始时间起按固定速率放行号码，
+ * 开始时先放行burst个，之后每秒放行rate个；号码轮到后才能下单，
+ * 下单路径上的并发量由放行速率决定
+ * <p>
+ * 放行进度只由时间计算，不需要各节点协调；查询号码状态不访问redis和数据库
+ */
+@Component
+public class SeckillWaitingRoom {
+
+    private static final DefaultRedisScript<Long> TICKET_SCRIPT;
+    static {
+        TICKET_SCRIPT = new DefaultRedisScript<>();
+        TICKET_SCRIPT.setLocation(new ClassPathResource("seckill_ticket.lua"));
+        TICKET_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillVoucherCache seckillVoucherCache;
+    private final boolean enabled;
+    //每秒放行的号码数
+    private final long rate;
+    //开始时立即放行的号码数
+    private final long burst;
+
+    public SeckillWaitingRoom(StringRedisTemplate stringRedisTemplate, SeckillVoucherCache seckillVoucherCache,
+                              @Value("${hmdp.seckill.waiting-room.enabled:false}") boolean enabled,
+                              @Value("${hmdp.seckill.waiting-room.rate:500}") long rate,
+                              @Value("${hmdp.seckill.waiting-room.burst:100}") long burst) {
+        if (rate <= 0 || burst < 0) {
+            throw new IllegalArgumentException("放行速率必须大于0");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherCache = seckillVoucherCache;
+        this.enabled = enabled;
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 领取号码，同一用户重复领取返回原号码
+     */
+    public long take(Long voucherId, Long userId) {
+        Long ticket = stringRedisTemplate.execute(
+                TICKET_SCRIPT,
+                Arrays.asList(SECKILL_TICKET_KEY + voucherId, SECKILL_TICKET_SEQ_KEY + voucherId),
+                userId.toString()
+        );
+        return ticket == null ? 0 : ticket;
+    }
+
+    /**
+     * 用户的号码是否已轮到
+     */
+    public boolean isAdmitted(Long voucherId, Long userId) {
+        Object ticket = stringRedisTemplate.opsForHash().get(SECKILL_TICKET_KEY + voucherId, userId.toString());
+        if (ticket == null) {
+            return false;
+        }
+        SeckillTicket status = status(voucherId, Long.parseLong(ticket.toString()));
+        return status != null && status.getAdmitted();
+    }
+
+    /**
+     * 号码的状态
+     * @return 券不存在时返回null
+     */
+    public SeckillTicket status(Long voucherId, long ticket) {
+        SeckillVoucherCache.Window window = seckillVoucherCache.get(voucherId);
+        if (window == null) {
+            return null;
+        }
+        long openTime = window.getBeginTime();
+        long now = System.currentTimeMillis();
+        long admitted = now < openTime ? 0 : burst + (now - openTime) * rate / 1000;
+        if (ticket <= admitted) {
+            return new SeckillTicket(ticket, true, 0L, 0L);
+        }
+        long ahead = ticket - admitted;
+        //未开始时等到开始，之后按放行速率估算
+        long wait = now < openTime ? openTime - now : 0;
+        long retryAfter = wait + Math.max(0, ahead - (now < openTime ? burst : 0)) * 1000 / rate;
+        return new SeckillTicket(ticket, false, ahead, Math.max(retryAfter, 100L));
+    }
+}
@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 店铺缓存预热：流式读取tb_shop，按批通过管道写入逻辑过期数据
+ */
+@Slf4j
+@Component
+public class ShopCachePreloader implements ApplicationRunner {
+
+    //每写入多少批打印一次进度
+    private static final int LOG_EVERY_BATCHES = 100;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.preload-on-startup:true}")
+    private boolean preloadOnStartup;
+
+    //单线程执行，同一节点同时只有一个预热任务
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "shop-cache-preloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong loaded = new AtomicLong();
+    private volatile long total;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile String error;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (preloadOnStartup) {
+            start();
+        }
+    }
+
+    /**
+     * 异步开始预热
+     * @return 是否成功提交，已有预热任务在运行时返回false
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        loaded.set(0);
+        total = 0;
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        error = null;
+        executor.submit(this::preload);
+        return true;
+    }
+
+    private void preload() {
+        //多个节点同时启动时，只由一个节点预热
+        SimpleRedisLock lock = new SimpleRedisLock(stringRedisTemplate, LOCK_PRELOAD_SHOP_NAME);
+        if (!lock.tryLock(LOCK_PRELOAD_TTL)) {
+            log.info("其它节点正在预热店铺缓存，跳过");
+            error = "locked by another node";
+            endTime = System.currentTimeMillis();
+            running.set(false);
+            return;
+        }
+        try {
+            total = shopMapper.selectCount(null);
+            log.info("开始预热店铺缓存，共{}条", total);
+            Map<Long, Shop> batch = new LinkedHashMap<>(CACHE_PRELOAD_BATCH_SIZE * 2);
+            AtomicLong batches = new AtomicLong();
+            //每批从数据库读取的耗时作为重建耗时写入，保留提前刷新
+            AtomicLong batchBegin = new AtomicLong(System.currentTimeMillis());
+            shopMapper.streamAll(context -> {
+                Shop shop = context.getResultObject();
+                batch.put(shop.getId(), shop);
+                if (batch.size() >= CACHE_PRELOAD_BATCH_SIZE) {
+                    flush(batch, System.currentTimeMillis() - batchBegin.get());
+                    batchBegin.set(System.currentTimeMillis());
+                    if (batches.incrementAndGet() % LOG_EVERY_BATCHES == 0) {
+                        log.info("店铺缓存预热进度：{}", progress());
+                    }
+                }
+            });
+            flush(batch, System.currentTimeMillis() - batchBegin.get());
+            log.info("店铺缓存预热完成：{}", progress());
+        } catch (Exception e) {
+            log.error("店铺缓存预热失败", e);
+            error = e.getMessage();
+        } finally {
+            endTime = System.currentTimeMillis();
+            lock.unlock();
+            running.set(false);
+        }
+    }
+
+    //只写入redis中不存在的店铺：读取之后被修改并已写回的新数据不会被预热的旧数据覆盖
+    private void flush(Map<Long, Shop> batch, long rebuildCost) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        cacheClient.setBatchWithLogicalExpireIfAbsent(CACHE_SHOP_KEY, batch, CACHE_SHOP_TTL, TimeUnit.MINUTES,
+                Math.max(1L, rebuildCost));
+        loaded.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * 查询预热进度
+     * @return 是否运行中、已写入数、总数、耗时（毫秒）及每秒写入数
+     */
+    public Map<String, Object> progress() {
+        long end = endTime > 0 ? endTime : System.currentTimeMillis();
+        long elapsed = startTime > 0 ? end - startTime : 0;
+        long count = loaded.get();
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("loaded", count);
+        progress.put("total", total);
+        progress.put("elapsedMillis", elapsed);
+        progress.put("rowsPerSecond", elapsed > 0 ? count * 1000 / elapsed : 0);
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+}
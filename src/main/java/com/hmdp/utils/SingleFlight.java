@@ -0,0 +1,86 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 同一个JVM内按key合并并发加载：同一时刻只有一个线程执行加载，其他线程等待并共享它的结果
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载，已有同key的加载在进行时直接等待其结果
+     * @param key 合并的key
+     * @param loader 加载逻辑，抛出的异常会同样抛给所有等待的线程
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            //已有线程在加载，等待结果
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    /**
+     * 异步执行加载，已有同key的加载在进行时（同步或异步）直接返回其结果
+     * @param loader 返回加载结果的future
+     * @return 加载结果的future
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            return (CompletableFuture<T>) existing;
+        }
+        try {
+            loader.get().whenComplete((value, e) -> {
+                calls.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(value);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            calls.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * 当前正在加载的key数量
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+}
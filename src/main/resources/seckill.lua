@@ -0,0 +1,34 @@
+-- 库存key
+-- local stockKey = KEYS[1]
+-- 已下单用户集合key
+-- local orderKey = KEYS[2]
+-- 订单消息队列key
+-- local streamKey = KEYS[3]
+-- 用户id
+-- local userId = ARGV[1]
+-- 优惠券id
+-- local voucherId = ARGV[2]
+-- 订单id
+-- local orderId = ARGV[3]
+
+-- 库存未加载到redis
+local stock = redis.call('get', KEYS[1])
+if(stock == false) then
+    return 3
+end
+-- 判断库存是否充足
+if(tonumber(stock) <= 0) then
+    -- 库存不足
+    return 1
+end
+-- 判断用户是否已下单
+if(redis.call('sismember', KEYS[2], ARGV[1]) == 1) then
+    -- 重复下单
+    return 2
+end
+-- 扣库存，记录下单用户
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+-- 订单写入消息队列 xadd stream.orders * k1 v1 k2 v2 ...
+redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'voucherId', ARGV[2], 'id', ARGV[3])
+return 0
@@ -0,0 +1,16 @@
+-- 用户号码hash key
+-- local ticketKey = KEYS[1]
+-- 号码序列key
+-- local seqKey = KEYS[2]
+-- 用户id
+-- local userId = ARGV[1]
+
+-- 已领取过号码，返回原号码
+local ticket = redis.call('hget', KEYS[1], ARGV[1])
+if(ticket) then
+    return tonumber(ticket)
+end
+-- 领取新号码
+ticket = redis.call('incr', KEYS[2])
+redis.call('hset', KEYS[1], ARGV[1], ticket)
+return ticket
@@ -0,0 +1,57 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.ResponseSnapshot;
+import com.hmdp.service.IShopTypeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ShopTypeControllerTests {
+
+    private static final String BODY = "{\"success\":true,\"data\":[{\"id\":1,\"name\":\"美食\"}]}";
+
+    private final ResponseSnapshot snapshot = ResponseSnapshot.of(BODY.getBytes(StandardCharsets.UTF_8));
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        IShopTypeService typeService = mock(IShopTypeService.class);
+        when(typeService.queryTypeListSnapshot()).thenReturn(snapshot);
+        ShopTypeController controller = new ShopTypeController();
+        ReflectionTestUtils.setField(controller, "typeService", typeService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void testListWithEtag() throws Exception {
+        mockMvc.perform(get("/shop-type/list"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, snapshot.getEtag()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().bytes(snapshot.getBody()));
+    }
+
+    @Test
+    void testNotModified() throws Exception {
+        mockMvc.perform(get("/shop-type/list").header(HttpHeaders.IF_NONE_MATCH, snapshot.getEtag()))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, snapshot.getEtag()))
+                .andExpect(content().bytes(new byte[0]));
+        //ETag不同时返回完整响应
+        mockMvc.perform(get("/shop-type/list").header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(snapshot.getBody()));
+    }
+}
@@ -0,0 +1,211 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用内存Map模拟redis，验证缓存击穿时每个节点每个key只查询一次数据库
+ */
+class CacheClientTests {
+
+    private static final int THREADS = 64;
+
+    //模拟的redis数据
+    private final Map<String, Object> redis = new ConcurrentHashMap<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CacheRebuildExecutor rebuildExecutor;
+    private CacheClient cacheClient;
+    private ExecutorService es;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> stringOps = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(stringOps);
+        when(stringOps.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(inv -> redis.putIfAbsent(inv.getArgument(0), inv.getArgument(1)) == null);
+        when(stringRedisTemplate.delete(anyString())).thenAnswer(inv -> redis.remove(inv.<String>getArgument(0)) != null);
+        when(stringOps.get(anyString())).thenAnswer(inv -> (String) redis.get(inv.<String>getArgument(0)));
+        when(stringOps.increment(anyString())).thenAnswer(inv -> {
+            String next = String.valueOf(Long.parseLong((String) redis.getOrDefault(inv.<String>getArgument(0), "0")) + 1);
+            redis.put(inv.getArgument(0), next);
+            return Long.parseLong(next);
+        });
+
+        RedisTemplate<String, byte[]> byteRedisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, byte[]> byteOps = mock(ValueOperations.class);
+        when(byteRedisTemplate.opsForValue()).thenReturn(byteOps);
+        when(byteOps.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(byteOps).set(anyString(), any(byte[].class), anyLong(), any(TimeUnit.class));
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(byteOps).set(anyString(), any(byte[].class));
+
+        rebuildExecutor = new CacheRebuildExecutor(10, 1000, CacheRebuildExecutor.DISCARD, 10, meterRegistry);
+        cacheClient = new CacheClient(stringRedisTemplate, byteRedisTemplate, new JsonCacheCodec(), rebuildExecutor, meterRegistry, null);
+        es = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        es.shutdownNow();
+        rebuildExecutor.shutdown();
+    }
+
+    //模拟耗时的数据库查询，并统计每个id的查询次数
+    private Function<Long, Shop> slowDb(Map<Long, AtomicInteger> calls) {
+        return id -> {
+            calls.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return id > 0 ? new Shop().setId(id).setName("shop" + id) : null;
+        };
+    }
+
+    //所有线程同时发起查询
+    private List<Shop> stampede(Function<Long, Shop> query, long... ids) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Shop>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            long id = ids[i % ids.length];
+            futures.add(es.submit(() -> {
+                start.await();
+                return query.apply(id);
+            }));
+        }
+        start.countDown();
+        List<Shop> results = new ArrayList<>();
+        for (Future<Shop> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @Test
+    void testPassThroughStampede() throws Exception {
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+        Function<Long, Shop> db = slowDb(calls);
+
+        List<Shop> results = stampede(id -> cacheClient.queryWithPassThrough(
+                "cache:shop:", id, Shop.class, db, 30L, TimeUnit.MINUTES), 1L, 2L, -1L);
+
+        assertEquals(1, calls.get(1L).get());
+        assertEquals(1, calls.get(2L).get());
+        assertEquals(1, calls.get(-1L).get());
+        //每个key只重建一次
+        assertEquals(3, meterRegistry.counter("hmdp.cache.events",
+                "prefix", "cache:shop:", "event", CacheMetrics.REBUILD_STARTED).count());
+        for (int i = 0; i < results.size(); i++) {
+            long id = new long[]{1L, 2L, -1L}[i % 3];
+            if (id > 0) {
+                assertEquals(id, results.get(i).getId());
+            } else {
+                assertNull(results.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testMutexStampede() throws Exception {
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+        Function<Long, Shop> db = slowDb(calls);
+
+        List<Shop> results = stampede(id -> cacheClient.queryWithMutex(
+                "cache:shop:", id, Shop.class, db, 30L, TimeUnit.MINUTES), 1L);
+
+        assertEquals(1, calls.get(1L).get());
+        results.forEach(shop -> assertEquals(1L, shop.getId()));
+        //锁已释放
+        assertNull(redis.get(RedisConstants.LOCK_SHOP_KEY + 1));
+    }
+
+    @Test
+    void testLogicalExpireMissAndNamespaceBump() throws Exception {
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+        Function<Long, Shop> db = slowDb(calls);
+        cacheClient.enableNamespace("cache:shop:");
+        Function<Long, Shop> query = id -> cacheClient.queryWithLogicalExpire(
+                "cache:shop:", id, Shop.class, db, 30L, TimeUnit.MINUTES);
+
+        //未预热时查询数据库并写入，每个key只查询一次
+        stampede(query, 1L).forEach(shop -> assertEquals(1L, shop.getId()));
+        assertEquals(1, calls.get(1L).get());
+        assertTrue(redis.containsKey("cache:shop:1"));
+
+        //版本号加一后使用新的key，旧key不再访问
+        assertEquals(1, cacheClient.bumpNamespace("cache:shop:"));
+        assertEquals("cache:shop:v1:1", cacheClient.key("cache:shop:", 1L));
+        stampede(query, 1L).forEach(shop -> assertEquals(1L, shop.getId()));
+        assertEquals(2, calls.get(1L).get());
+        assertTrue(redis.containsKey("cache:shop:v1:1"));
+    }
+
+    @Test
+    void testUndecodableLogicalValueTriggersRebuild() throws Exception {
+        //结构已变化或损坏的数据，按已过期处理：返回空并后台重建，不抛出异常
+        redis.put("cache:shop:1", "not json".getBytes(StandardCharsets.UTF_8));
+        CountDownLatch rebuilt = new CountDownLatch(1);
+        Function<Long, Shop> db = id -> {
+            rebuilt.countDown();
+            return new Shop().setId(id).setName("shop" + id);
+        };
+
+        assertNull(cacheClient.queryWithLogicalExpire("cache:shop:", 1L, Shop.class, db, 30L, TimeUnit.MINUTES));
+        assertTrue(rebuilt.await(5, TimeUnit.SECONDS));
+        rebuildExecutor.shutdown();
+        assertEquals(1L, cacheClient.queryWithLogicalExpire(
+                "cache:shop:", 1L, Shop.class, db, 30L, TimeUnit.MINUTES).getId());
+    }
+
+    @Test
+    void testBloomFilterKeepsAddsDuringRebuild() {
+        cacheClient.rebuildBloomFilter("cache:shop:", new BloomFilter(1000, 0.01), bloomFilter -> bloomFilter.put(1L));
+        //装入期间新增的id，以及其它节点广播的id，替换后仍然存在
+        cacheClient.rebuildBloomFilter("cache:shop:", new BloomFilter(1000, 0.01), bloomFilter -> {
+            bloomFilter.put(1L);
+            cacheClient.addToBloomFilter("cache:shop:", 2L);
+            cacheClient.onBloomFilterAdd("cache:shop:3");
+        });
+        Map<String, Object> stats = cacheClient.bloomFilterStats().get("cache:shop:");
+        assertEquals(3L, stats.get("insertions"));
+        assertEquals(1L, cacheClient.queryWithPassThrough("cache:shop:", 1L, Shop.class,
+                id -> new Shop().setId(id), 30L, TimeUnit.MINUTES).getId());
+        assertEquals(2L, cacheClient.queryWithPassThrough("cache:shop:", 2L, Shop.class,
+                id -> new Shop().setId(id), 30L, TimeUnit.MINUTES).getId());
+        assertEquals(3L, cacheClient.queryWithPassThrough("cache:shop:", 3L, Shop.class,
+                id -> new Shop().setId(id), 30L, TimeUnit.MINUTES).getId());
+    }
+}
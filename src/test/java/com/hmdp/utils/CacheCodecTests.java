@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheCodecTests {
+
+    private final BinaryCacheCodec binaryCodec = new BinaryCacheCodec();
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+
+    private Shop shop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setArea("大关")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(-1)
+                .setScore(37)
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19, 123456789));
+    }
+
+    @Test
+    void testBinaryRoundTrip() {
+        Shop shop = shop();
+        byte[] bytes = binaryCodec.encode(shop);
+        assertEquals(shop, binaryCodec.decode(bytes, Shop.class));
+        assertTrue(bytes.length < jsonCodec.encode(shop).length);
+    }
+
+    @Test
+    void testBinaryLogicalRoundTrip() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop());
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+
+        RedisData decoded = binaryCodec.decodeLogical(binaryCodec.encode(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(shop(), decoded.getData());
+
+        redisData.setData(null);
+        assertNull(binaryCodec.decodeLogical(binaryCodec.encode(redisData), Shop.class).getData());
+    }
+
+    @Test
+    void testBinaryReadsJson() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop().setUpdateTime(null));
+        redisData.setExpireTime(LocalDateTime.of(2030, 1, 1, 0, 0));
+
+        assertEquals(shop().setUpdateTime(null), binaryCodec.decode(jsonCodec.encode(shop().setUpdateTime(null)), Shop.class));
+        RedisData decoded = binaryCodec.decodeLogical(jsonCodec.encode(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(redisData.getData(), decoded.getData());
+        //旧版本手工写入的json
+        String legacy = "{\"data\":{\"id\":2,\"name\":\"蔡馬洪涛烤肉\"},\"expireTime\":1893456000000}";
+        assertEquals(2L, ((Shop) binaryCodec.decodeLogical(legacy.getBytes(StandardCharsets.UTF_8), Shop.class).getData()).getId());
+    }
+
+    @Test
+    void testBinaryRejectsOtherSchema() {
+        byte[] bytes = binaryCodec.encode(shop());
+        assertThrows(IllegalStateException.class, () -> binaryCodec.decode(bytes, ShopV2.class));
+    }
+
+    //模拟字段变化后的Shop
+    @Data
+    static class ShopV2 {
+        private Long id;
+        private String name;
+    }
+}
@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CacheInvalidationQueueTests {
+
+    //已UNLINK的key，每次UNLINK释放一个许可
+    private final List<String> unlinked = new CopyOnWriteArrayList<>();
+    private final Semaphore unlinks = new Semaphore(0);
+    private final CacheClient cacheClient = mock(CacheClient.class);
+    //二次删除由测试手动触发
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private CacheInvalidationQueue queue;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisConnection connection = mock(RedisConnection.class);
+        doAnswer(inv -> {
+            for (Object rawKey : inv.getArguments()) {
+                unlinked.add(new String((byte[]) rawKey, StandardCharsets.UTF_8));
+            }
+            unlinks.release();
+            return null;
+        }).when(connection).unlink(any());
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenAnswer(inv -> {
+                    inv.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+                    return null;
+                });
+
+        queue = new CacheInvalidationQueue(stringRedisTemplate, cacheClient, 100, new SimpleMeterRegistry(), scheduler);
+        ReflectionTestUtils.invokeMethod(queue, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        ReflectionTestUtils.invokeMethod(queue, "destroy");
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(s -> s.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    //等待后台线程把已入队的key全部UNLINK
+    private void awaitUnlinked(int count) throws InterruptedException {
+        while (unlinked.size() < count) {
+            assertTrue(unlinks.tryAcquire(5, TimeUnit.SECONDS), "等待UNLINK超时");
+        }
+    }
+
+    @Test
+    void testDeleteAfterCommitAndTwiceWithDelay() throws InterruptedException {
+        TransactionSynchronizationManager.initSynchronization();
+        queue.invalidate("cache:shop:1");
+        queue.invalidate("cache:shop:2");
+        queue.invalidate("cache:shop:1");
+        //提交前不入队
+        verify(cacheClient, never()).evictLocal(anyString());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        awaitUnlinked(2);
+        assertEquals(2, unlinked.size());
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+
+        //延迟二次删除
+        ArgumentCaptor<Runnable> secondDelete = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(secondDelete.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+        secondDelete.getValue().run();
+        awaitUnlinked(4);
+        assertEquals(4, unlinked.size());
+    }
+
+    @Test
+    void testNoDeleteOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        queue.invalidate("cache:shop:1");
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        //回滚后没有入队，也没有安排二次删除
+        verify(cacheClient, never()).evictLocal(anyString());
+        verify(scheduler, never()).schedule(any(Runnable.class), any(Long.class), any(TimeUnit.class));
+        assertTrue(unlinked.isEmpty());
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+}
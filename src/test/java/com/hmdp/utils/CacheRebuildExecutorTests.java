@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheRebuildExecutorTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testDeduplicateAndDiscard() throws InterruptedException {
+        CacheRebuildExecutor executor = new CacheRebuildExecutor(1, 1, CacheRebuildExecutor.DISCARD, 1, meterRegistry);
+        CountDownLatch block = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable task = () -> {
+            runs.incrementAndGet();
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        //第一个任务占用线程，第二个进入队列
+        assertTrue(executor.submit("cache:shop:1", task));
+        assertTrue(executor.submit("cache:shop:2", task));
+        //同一个key不重复提交
+        assertFalse(executor.submit("cache:shop:1", task));
+        //队列已满，丢弃
+        assertFalse(executor.submit("cache:shop:3", task));
+        //批量提交时跳过已在重建的key，其余key因队列已满被丢弃
+        List<String> claimed = executor.submit(Arrays.asList("cache:shop:2", "cache:shop:4"), keys -> {});
+        assertEquals(Collections.emptyList(), claimed);
+
+        block.countDown();
+        executor.shutdown();
+        assertEquals(2, runs.get());
+        assertEquals(2, meterRegistry.counter("hmdp.cache.rebuild.deduplicated").count());
+        assertEquals(2, meterRegistry.counter("hmdp.cache.rebuild.rejected").count());
+    }
+
+    @Test
+    void testFailureDoesNotLeakKey() throws InterruptedException {
+        CacheRebuildExecutor executor = new CacheRebuildExecutor(1, 10, CacheRebuildExecutor.DISCARD, 1, meterRegistry);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit("cache:shop:1", () -> {
+            throw new IllegalStateException("db down");
+        });
+        //异常后key被释放，可以再次提交
+        assertTrue(waitUntil(() -> executor.submit("cache:shop:1", done::countDown)));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(1, meterRegistry.counter("hmdp.cache.rebuild.failed").count());
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+}
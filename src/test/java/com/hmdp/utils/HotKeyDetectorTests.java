@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotKeyDetectorTests {
+
+    @Test
+    void testDetectHotKeys() {
+        HotKeyDetector detector = new HotKeyDetector(4096, 4, 1.0, 1000, 10, 60_000);
+        //3个热点key各占约20%的访问，其余分散到10万个key
+        for (int i = 0; i < 50_000; i++) {
+            int r = ThreadLocalRandom.current().nextInt(100);
+            String key = r < 60 ? "cache:shop:" + (r % 3) : "cache:shop:" + (100 + ThreadLocalRandom.current().nextInt(100_000));
+            detector.record(key);
+        }
+
+        Map<String, Long> top = detector.topKeys();
+        assertEquals(3, top.size());
+        assertTrue(detector.isHot("cache:shop:0"));
+        assertTrue(detector.isHot("cache:shop:1"));
+        assertTrue(detector.isHot("cache:shop:2"));
+        assertFalse(detector.isHot("cache:shop:100"));
+    }
+
+    @Test
+    void testDecay() throws InterruptedException {
+        HotKeyDetector detector = new HotKeyDetector(1024, 4, 1.0, 100, 10, 50);
+        for (int i = 0; i < 150; i++) {
+            detector.record("cache:shop:1");
+        }
+        assertTrue(detector.isHot("cache:shop:1"));
+
+        //两个窗口后计数降到阈值以下，下一次访问时移除
+        Thread.sleep(60);
+        detector.record("cache:shop:2");
+        Thread.sleep(60);
+        detector.record("cache:shop:2");
+        assertFalse(detector.isHot("cache:shop:1"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.ResponseSnapshot;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比店铺详情命中缓存后生成响应体的两种方式，关注每次请求的内存分配（gc.alloc.rate.norm）：
+ * <p>
+ * redisObject：redis字节 → RedisData → Shop → Result → json，即原有路径；
+ * localObject：本地缓存中的Shop → Result → json；
+ * redisBytes：redis字节 → 响应快照，直接得到响应体；
+ * localBytes：本地缓存中的响应快照，不产生分配
+ * <p>
+ * 运行：mvn test-compile 后以main方法启动
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseCacheBenchmark {
+
+    private CacheCodec codec;
+    //与Spring MVC配置一致的ObjectMapper
+    private ObjectMapper objectMapper;
+    private Shop shop;
+    private byte[] redisDataBytes;
+    private ResponseSnapshot snapshot;
+    private byte[] snapshotBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = new JsonCacheCodec();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        shop = new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        redisDataBytes = codec.encode(redisData);
+        snapshot = ResponseSnapshot.of(objectMapper.writeValueAsBytes(Result.ok(shop)), 1642066339000L);
+        snapshotBytes = snapshot.toBytes();
+    }
+
+    @Benchmark
+    public byte[] redisObject() throws IOException {
+        Shop cached = (Shop) codec.decodeLogical(redisDataBytes, Shop.class).getData();
+        return objectMapper.writeValueAsBytes(Result.ok(cached));
+    }
+
+    @Benchmark
+    public byte[] localObject() throws IOException {
+        return objectMapper.writeValueAsBytes(Result.ok(shop));
+    }
+
+    @Benchmark
+    public byte[] redisBytes() {
+        return ResponseSnapshot.fromBytes(snapshotBytes).getBody();
+    }
+
+    @Benchmark
+    public byte[] localBytes() {
+        return snapshot.getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResponseCacheBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SeckillSoldOutRegistryTests {
+
+    @Test
+    void testMarkBroadcastOnceAndClear() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        SeckillSoldOutRegistry registry = new SeckillSoldOutRegistry(stringRedisTemplate);
+
+        registry.markSoldOut(10L);
+        registry.markSoldOut(10L);
+        assertTrue(registry.isSoldOut(10L));
+        verify(stringRedisTemplate, times(1)).convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "1:10");
+
+        registry.clear(10L);
+        assertFalse(registry.isSoldOut(10L));
+        verify(stringRedisTemplate).convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "0:10");
+    }
+
+    @Test
+    void testApplyBroadcast() {
+        SeckillSoldOutRegistry registry = new SeckillSoldOutRegistry(mock(StringRedisTemplate.class));
+        registry.onMessage("1:7");
+        assertTrue(registry.isSoldOut(7L));
+        registry.onMessage("0:7");
+        assertFalse(registry.isSoldOut(7L));
+        //无法解析的消息忽略
+        registry.onMessage("x");
+        assertFalse(registry.isSoldOut(7L));
+    }
+
+    @Test
+    void testMarkExpires() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        //标记立即过期，之后重新由redis判断
+        SeckillSoldOutRegistry registry = new SeckillSoldOutRegistry(stringRedisTemplate, -1);
+
+        registry.markSoldOut(10L);
+        assertFalse(registry.isSoldOut(10L));
+        registry.onMessage("1:10");
+        assertFalse(registry.isSoldOut(10L));
+        //过期后再次售罄会重新广播
+        registry.markSoldOut(10L);
+        verify(stringRedisTemplate, times(2)).convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "1:10");
+    }
+}
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.LocalDateTime;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SeckillVoucherCacheTests {
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> ops = mock(ValueOperations.class);
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+    private final ISeckillVoucherService seckillVoucherService = mock(ISeckillVoucherService.class);
+    private final SeckillVoucherCache cache;
+
+    SeckillVoucherCacheTests() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(ops);
+        cache = new SeckillVoucherCache(stringRedisTemplate, seckillVoucherService);
+    }
+
+    @Test
+    void testLoadFromRedisOnce() {
+        when(ops.get(SECKILL_VOUCHER_KEY + 1)).thenReturn("100,200");
+        SeckillVoucherCache.Window window = cache.get(1L);
+        assertEquals(100L, window.getBeginTime());
+        assertEquals(200L, window.getEndTime());
+        assertSame(window, cache.get(1L));
+        verify(ops, times(1)).get(anyString());
+    }
+
+    @Test
+    void testMissingUntilAdded() {
+        assertNull(cache.get(2L));
+        assertNull(cache.get(2L));
+        //不存在的券只查一次数据库
+        verify(seckillVoucherService, times(1)).getById(2L);
+
+        SeckillVoucher voucher = new SeckillVoucher().setVoucherId(2L)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusHours(1));
+        cache.put(voucher);
+        verify(stringRedisTemplate).convertAndSend(SECKILL_VOUCHER_CHANNEL, "2");
+        when(ops.get(SECKILL_VOUCHER_KEY + 2)).thenReturn("1,2");
+        assertNotNull(cache.get(2L));
+    }
+
+    @Test
+    void testEvictOnBroadcast() {
+        when(ops.get(SECKILL_VOUCHER_KEY + 3)).thenReturn("1,2");
+        cache.get(3L);
+        cache.onMessage("3");
+        when(ops.get(SECKILL_VOUCHER_KEY + 3)).thenReturn("5,6");
+        assertEquals(5L, cache.get(3L).getBeginTime());
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.SeckillTicket;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SeckillWaitingRoomTests {
+
+    private SeckillWaitingRoom waitingRoom(long beginTime) {
+        SeckillVoucherCache seckillVoucherCache = mock(SeckillVoucherCache.class);
+        when(seckillVoucherCache.get(1L)).thenReturn(new SeckillVoucherCache.Window(beginTime, Long.MAX_VALUE));
+        return new SeckillWaitingRoom(mock(StringRedisTemplate.class), seckillVoucherCache, true, 100, 10);
+    }
+
+    @Test
+    void testAdmitByRate() {
+        //开始10秒后放行 10 + 10 * 100 = 1010 个号码
+        SeckillWaitingRoom waitingRoom = waitingRoom(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(10));
+        assertTrue(waitingRoom.status(1L, 1000).getAdmitted());
+
+        SeckillTicket ticket = waitingRoom.status(1L, 1500);
+        assertFalse(ticket.getAdmitted());
+        assertTrue(ticket.getAhead() > 0 && ticket.getAhead() <= 490);
+        assertTrue(ticket.getRetryAfter() <= 4900);
+    }
+
+    @Test
+    void testNotOpenYet() {
+        SeckillWaitingRoom waitingRoom = waitingRoom(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        SeckillTicket ticket = waitingRoom.status(1L, 1);
+        assertFalse(ticket.getAdmitted());
+        assertEquals(1L, ticket.getAhead());
+        //至少等到开始
+        assertTrue(ticket.getRetryAfter() > 50_000);
+    }
+
+    @Test
+    void testUnknownVoucher() {
+        assertNull(waitingRoom(System.currentTimeMillis()).status(2L, 1));
+    }
+}